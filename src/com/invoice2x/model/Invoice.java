@@ -150,6 +150,27 @@ public class Invoice {
         }
     }
     
+    // Deep copy; the items are copied too
+    public Invoice copy() {
+        Invoice copy = new Invoice();
+        copy.id = id;
+        copy.invoiceNumber = invoiceNumber;
+        copy.customerName = customerName;
+        copy.customerEmail = customerEmail;
+        copy.customerAddress = customerAddress;
+        copy.invoiceDate = invoiceDate;
+        copy.dueDate = dueDate;
+        copy.status = status;
+        copy.subtotal = subtotal;
+        copy.tax = tax;
+        copy.total = total;
+        copy.notes = notes;
+        for (InvoiceItem item : items) {
+            copy.items.add(item.copy());
+        }
+        return copy;
+    }
+    
     
      //Calculate totals based on items
      
@@ -79,6 +79,18 @@ public class InvoiceItem {
         this.total = total;
     }
     
+    // Field by field, so the stored total is kept rather than recalculated
+    public InvoiceItem copy() {
+        InvoiceItem copy = new InvoiceItem();
+        copy.id = id;
+        copy.invoiceId = invoiceId;
+        copy.description = description;
+        copy.quantity = quantity;
+        copy.unitPrice = unitPrice;
+        copy.total = total;
+        return copy;
+    }
+    
     
     public void calculateTotal() {
         if (quantity != null && unitPrice != null) {
@@ -0,0 +1,71 @@
+package com.invoice2x.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+ // Lightweight read model with only the columns shown in list and dashboard views
+ 
+public class InvoiceSummary {
+    
+    private int id;
+    private String invoiceNumber;
+    private String customerName;
+    private LocalDate invoiceDate;
+    private BigDecimal total;
+    private Invoice.InvoiceStatus status;
+    
+    public InvoiceSummary() {
+        this.total = BigDecimal.ZERO;
+        this.status = Invoice.InvoiceStatus.DRAFT;
+    }
+    
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+    
+    public void setId(int id) {
+        this.id = id;
+    }
+    
+    public String getInvoiceNumber() {
+        return invoiceNumber;
+    }
+    
+    public void setInvoiceNumber(String invoiceNumber) {
+        this.invoiceNumber = invoiceNumber;
+    }
+    
+    public String getCustomerName() {
+        return customerName;
+    }
+    
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+    
+    public LocalDate getInvoiceDate() {
+        return invoiceDate;
+    }
+    
+    public void setInvoiceDate(LocalDate invoiceDate) {
+        this.invoiceDate = invoiceDate;
+    }
+    
+    public BigDecimal getTotal() {
+        return total;
+    }
+    
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+    
+    public Invoice.InvoiceStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(Invoice.InvoiceStatus status) {
+        this.status = status;
+    }
+}
@@ -0,0 +1,196 @@
+package com.invoice2x.ui.panels;
+
+import com.invoice2x.util.UIConstants;
+import javax.swing.*;
+import java.awt.*;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+ // Minimal bar chart for dashboard figures: vertical bars for time series, horizontal for rankings
+ 
+public class BarChartPanel extends JPanel {
+    
+    private static final int LABEL_WIDTH = 110;
+    private static final int BAR_GAP = 6;
+    
+    private final String title;
+    private final boolean horizontal;
+    private final Color barColor;
+    private final List<String> labels = new ArrayList<>();
+    private final List<BigDecimal> values = new ArrayList<>();
+    private String emptyMessage = "No data yet";
+    
+    public BarChartPanel(String title, boolean horizontal, Color barColor) {
+        this.title = title;
+        this.horizontal = horizontal;
+        this.barColor = barColor;
+        setBackground(UIConstants.BG_CARD);
+        setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(UIConstants.BORDER_LIGHT, 1),
+            BorderFactory.createEmptyBorder(16, 16, 16, 16)
+        ));
+        setPreferredSize(new Dimension(300, 230));
+        // Tooltips are resolved per bar in getToolTipText(MouseEvent)
+        setToolTipText("");
+    }
+    
+    // Entries are drawn in map order
+    public void setData(Map<String, BigDecimal> data) {
+        labels.clear();
+        values.clear();
+        for (Map.Entry<String, BigDecimal> entry : data.entrySet()) {
+            labels.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        repaint();
+    }
+    
+    public void setEmptyMessage(String emptyMessage) {
+        this.emptyMessage = emptyMessage;
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        
+        Insets insets = getInsets();
+        int x = insets.left;
+        int y = insets.top;
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        
+        g2.setFont(UIConstants.TITLE_FONT);
+        g2.setColor(UIConstants.TEXT_DARK);
+        FontMetrics titleMetrics = g2.getFontMetrics();
+        g2.drawString(title, x, y + titleMetrics.getAscent());
+        int top = y + titleMetrics.getHeight() + 10;
+        Rectangle area = new Rectangle(x, top, width, height - (top - y));
+        
+        g2.setFont(UIConstants.SMALL_FONT);
+        BigDecimal max = maxValue();
+        if (max.signum() <= 0) {
+            g2.setColor(UIConstants.TEXT_LIGHT);
+            g2.drawString(emptyMessage, area.x, area.y + g2.getFontMetrics().getAscent());
+        } else if (horizontal) {
+            paintHorizontal(g2, area, max);
+        } else {
+            paintVertical(g2, area, max);
+        }
+        g2.dispose();
+    }
+    
+    private void paintHorizontal(Graphics2D g2, Rectangle area, BigDecimal max) {
+        FontMetrics fm = g2.getFontMetrics();
+        for (int i = 0; i < labels.size(); i++) {
+            Rectangle bar = barBounds(area, i, max);
+            int textY = bar.y + (bar.height + fm.getAscent() - fm.getDescent()) / 2;
+            
+            g2.setColor(UIConstants.TEXT_MEDIUM);
+            g2.drawString(fit(labels.get(i), fm, LABEL_WIDTH - 8), area.x, textY);
+            
+            g2.setColor(barColor);
+            g2.fillRoundRect(bar.x, bar.y, bar.width, bar.height, 4, 4);
+            
+            g2.setColor(UIConstants.TEXT_DARK);
+            g2.drawString(compact(values.get(i)), bar.x + bar.width + 6, textY);
+        }
+    }
+    
+    private void paintVertical(Graphics2D g2, Rectangle area, BigDecimal max) {
+        FontMetrics fm = g2.getFontMetrics();
+        int chartBottom = area.y + area.height - fm.getHeight();
+        
+        g2.setColor(UIConstants.BORDER_LIGHT);
+        g2.drawLine(area.x, chartBottom, area.x + area.width, chartBottom);
+        g2.setColor(UIConstants.TEXT_LIGHT);
+        g2.drawString(compact(max), area.x, area.y + fm.getAscent());
+        
+        for (int i = 0; i < labels.size(); i++) {
+            Rectangle bar = barBounds(area, i, max);
+            g2.setColor(barColor);
+            g2.fillRoundRect(bar.x, bar.y, bar.width, bar.height, 4, 4);
+            
+            String label = fit(labels.get(i), fm, bar.width + BAR_GAP);
+            g2.setColor(UIConstants.TEXT_MEDIUM);
+            g2.drawString(label, bar.x + (bar.width - fm.stringWidth(label)) / 2, chartBottom + fm.getAscent() + 2);
+        }
+    }
+    
+    // Where bar i is drawn; shared by painting and tooltips
+    private Rectangle barBounds(Rectangle area, int i, BigDecimal max) {
+        FontMetrics fm = getFontMetrics(UIConstants.SMALL_FONT);
+        double share = values.get(i).doubleValue() / max.doubleValue();
+        if (horizontal) {
+            int valueWidth = fm.stringWidth("$000.0k") + 8;
+            int rowHeight = Math.max(fm.getHeight(), (area.height - BAR_GAP * (labels.size() - 1)) / labels.size());
+            rowHeight = Math.min(rowHeight, 28);
+            int barSpace = Math.max(0, area.width - LABEL_WIDTH - valueWidth);
+            int length = (int) Math.round(Math.max(0, share) * barSpace);
+            return new Rectangle(area.x + LABEL_WIDTH, area.y + i * (rowHeight + BAR_GAP), Math.max(length, 2), rowHeight);
+        }
+        int chartTop = area.y + fm.getHeight() + 4;
+        int chartBottom = area.y + area.height - fm.getHeight();
+        int slot = Math.max(1, area.width / labels.size());
+        int length = (int) Math.round(Math.max(0, share) * (chartBottom - chartTop));
+        return new Rectangle(area.x + i * slot + BAR_GAP / 2, chartBottom - length, Math.max(1, slot - BAR_GAP), length);
+    }
+    
+    @Override
+    public String getToolTipText(java.awt.event.MouseEvent event) {
+        BigDecimal max = maxValue();
+        if (max.signum() <= 0) {
+            return null;
+        }
+        Insets insets = getInsets();
+        int titleHeight = getFontMetrics(UIConstants.TITLE_FONT).getHeight() + 10;
+        Rectangle area = new Rectangle(insets.left, insets.top + titleHeight,
+            getWidth() - insets.left - insets.right, getHeight() - insets.top - insets.bottom - titleHeight);
+        for (int i = 0; i < labels.size(); i++) {
+            Rectangle bar = barBounds(area, i, max);
+            boolean hit = horizontal
+                ? event.getY() >= bar.y && event.getY() < bar.y + bar.height
+                : event.getX() >= bar.x && event.getX() < bar.x + bar.width;
+            if (hit) {
+                return labels.get(i) + ": $" + values.get(i).setScale(2, java.math.RoundingMode.HALF_UP);
+            }
+        }
+        return null;
+    }
+    
+    private BigDecimal maxValue() {
+        BigDecimal max = BigDecimal.ZERO;
+        for (BigDecimal value : values) {
+            max = max.max(value);
+        }
+        return max;
+    }
+    
+    private static String fit(String text, FontMetrics fm, int width) {
+        if (fm.stringWidth(text) <= width) {
+            return text;
+        }
+        String cut = text;
+        while (cut.length() > 1 && fm.stringWidth(cut + "...") > width) {
+            cut = cut.substring(0, cut.length() - 1);
+        }
+        return cut + "...";
+    }
+    
+    // $950, $12.4k, $1.3M
+    static String compact(BigDecimal amount) {
+        double value = amount.doubleValue();
+        if (Math.abs(value) >= 1_000_000) {
+            return String.format("$%.1fM", value / 1_000_000);
+        }
+        if (Math.abs(value) >= 1_000) {
+            return String.format("$%.1fk", value / 1_000);
+        }
+        return String.format("$%.0f", value);
+    }
+}
@@ -1,24 +1,38 @@
 package com.invoice2x.ui.panels;
 
 import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceSummary;
+import com.invoice2x.service.AnalyticsService;
 import com.invoice2x.service.DatabaseService;
+import com.invoice2x.service.InvoiceQuery;
+import com.invoice2x.service.InvoiceTotals;
 import com.invoice2x.ui.MainFrame;
 import com.invoice2x.util.UIConstants;
 import javax.swing.*;
 import java.awt.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
  // Dashboard with SMOOTH scrolling for invoice list
  
 public class DashboardPanel extends JPanel {
     
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MMM");
+    
     private MainFrame mainFrame;
     private JLabel totalInvoicesLabel;
     private JLabel thisMonthLabel;
     private JLabel pendingLabel;
+    private JLabel overdueLabel;
+    private BarChartPanel revenueChart;
+    private BarChartPanel customersChart;
+    private BarChartPanel agingChart;
     private JPanel recentInvoicesPanel;
     
     public DashboardPanel(MainFrame mainFrame) {
@@ -71,28 +85,50 @@ public class DashboardPanel extends JPanel {
         panel.setBackground(UIConstants.BG_LIGHT);
         
         // Stats cards row
-        JPanel cardsPanel = new JPanel(new GridLayout(1, 3, 16, 0));
+        JPanel cardsPanel = new JPanel(new GridLayout(1, 4, 16, 0));
         cardsPanel.setBackground(UIConstants.BG_LIGHT);
         cardsPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 16, 0));
         
         JPanel totalCard = createStatCard("Total Invoices", "0", UIConstants.PRIMARY_COLOR);
         JPanel monthCard = createStatCard("This Month", "$0", UIConstants.SUCCESS_COLOR);
         JPanel pendingCard = createStatCard("Pending", "$0", UIConstants.WARNING_COLOR);
+        JPanel overdueCard = createStatCard("Overdue", "$0", UIConstants.DANGER_COLOR);
         
         // The content panel contains: titleLabel (0), rigid spacer (1), valueLabel (2)
         totalInvoicesLabel = (JLabel) ((JPanel) totalCard.getComponent(0)).getComponent(2);
         thisMonthLabel = (JLabel) ((JPanel) monthCard.getComponent(0)).getComponent(2);
         pendingLabel = (JLabel) ((JPanel) pendingCard.getComponent(0)).getComponent(2);
+        overdueLabel = (JLabel) ((JPanel) overdueCard.getComponent(0)).getComponent(2);
         
         cardsPanel.add(totalCard);
         cardsPanel.add(monthCard);
         cardsPanel.add(pendingCard);
+        cardsPanel.add(overdueCard);
+        
+        // Charts row
+        JPanel chartsPanel = new JPanel(new GridLayout(1, 3, 16, 0));
+        chartsPanel.setBackground(UIConstants.BG_LIGHT);
+        chartsPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 16, 0));
+        
+        revenueChart = new BarChartPanel("Revenue by Month", false, UIConstants.PRIMARY_COLOR);
+        customersChart = new BarChartPanel("Top Customers", true, UIConstants.SUCCESS_COLOR);
+        agingChart = new BarChartPanel("Outstanding by Age", true, UIConstants.WARNING_COLOR);
+        agingChart.setEmptyMessage("Nothing outstanding");
+        
+        chartsPanel.add(revenueChart);
+        chartsPanel.add(customersChart);
+        chartsPanel.add(agingChart);
         
         // Recent invoices with SMOOTH SCROLLING
         JPanel recentSection = createRecentInvoicesSection();
         
+        JPanel lowerPanel = new JPanel(new BorderLayout());
+        lowerPanel.setBackground(UIConstants.BG_LIGHT);
+        lowerPanel.add(chartsPanel, BorderLayout.NORTH);
+        lowerPanel.add(recentSection, BorderLayout.CENTER);
+        
         panel.add(cardsPanel, BorderLayout.NORTH);
-        panel.add(recentSection, BorderLayout.CENTER);
+        panel.add(lowerPanel, BorderLayout.CENTER);
         
         return panel;
     }
@@ -163,37 +199,47 @@ public class DashboardPanel extends JPanel {
     public void refreshData() {
         try {
             DatabaseService db = DatabaseService.getInstance();
-            List<Invoice> allInvoices = db.getAllInvoices();
-            
-            totalInvoicesLabel.setText(String.valueOf(allInvoices.size()));
             
-            BigDecimal monthTotal = BigDecimal.ZERO;
-            BigDecimal pendingTotal = BigDecimal.ZERO;
+            // Totals come from the aggregates table, so this does not grow with invoice history
+            totalInvoicesLabel.setText(String.valueOf(db.countInvoices()));
             
-            java.time.LocalDate now = java.time.LocalDate.now();
-            for (Invoice inv : allInvoices) {
-                if (inv.getInvoiceDate().getMonth() == now.getMonth() &&
-                    inv.getInvoiceDate().getYear() == now.getYear()) {
-                    monthTotal = monthTotal.add(inv.getTotal());
-                }
-                
-                if (inv.getStatus() == Invoice.InvoiceStatus.PENDING) {
-                    pendingTotal = pendingTotal.add(inv.getTotal());
-                }
-            }
+            BigDecimal monthTotal = db.sumInvoiceTotals(YearMonth.now(), null);
+            BigDecimal pendingTotal = db.sumInvoiceTotals(null, Invoice.InvoiceStatus.PENDING);
             
             thisMonthLabel.setText("$" + monthTotal.setScale(2, RoundingMode.HALF_UP));
             pendingLabel.setText("$" + pendingTotal.setScale(2, RoundingMode.HALF_UP));
             
+            // Grouped in SQLite and cached until the next invoice is saved or deleted
+            AnalyticsService analytics = AnalyticsService.getInstance();
+            LocalDate today = LocalDate.now();
+            overdueLabel.setText("$" + analytics.getOverdue(today).getAmount().setScale(2, RoundingMode.HALF_UP));
+            
+            Map<String, BigDecimal> revenue = new LinkedHashMap<>();
+            for (Map.Entry<YearMonth, InvoiceTotals> month : analytics.getRevenueByMonth(12).entrySet()) {
+                revenue.put(month.getKey().format(MONTH_FORMAT), month.getValue().getAmount());
+            }
+            revenueChart.setData(revenue);
+            
+            Map<String, BigDecimal> customers = new LinkedHashMap<>();
+            for (Map.Entry<String, InvoiceTotals> customer : analytics.getTopCustomers(5).entrySet()) {
+                customers.put(customer.getKey(), customer.getValue().getAmount());
+            }
+            customersChart.setData(customers);
+            
+            Map<String, BigDecimal> aging = new LinkedHashMap<>();
+            for (Map.Entry<AnalyticsService.AgingBucket, InvoiceTotals> bucket : analytics.getAging(today).entrySet()) {
+                aging.put(bucket.getKey().getDisplayName(), bucket.getValue().getAmount());
+            }
+            agingChart.setData(aging);
+            
             // Update recent invoices
             recentInvoicesPanel.removeAll();
             
             // Show more invoices (10 instead of 5)
-            int count = 0;
-            for (Invoice inv : allInvoices) {
-                if (count >= 10) break;
+            InvoiceQuery recent = new InvoiceQuery();
+            recent.setPageSize(10);
+            for (InvoiceSummary inv : db.findInvoiceSummaries(recent)) {
                 recentInvoicesPanel.add(createInvoiceRow(inv));
-                count++;
             }
             
             recentInvoicesPanel.revalidate();
@@ -208,7 +254,7 @@ public class DashboardPanel extends JPanel {
         }
     }
     
-    private JPanel createInvoiceRow(Invoice invoice) {
+    private JPanel createInvoiceRow(InvoiceSummary invoice) {
         JPanel row = new JPanel(new BorderLayout());
         row.setBackground(UIConstants.BG_CARD);
         row.setBorder(BorderFactory.createCompoundBorder(
@@ -3,15 +3,25 @@ package com.invoice2x.ui.panels;
 import com.invoice2x.model.Invoice;
 import com.invoice2x.service.DatabaseService;
 import com.invoice2x.service.ExcelExportService;
+import com.invoice2x.service.ExportCheckpoint;
+import com.invoice2x.service.ExportCriteria;
+import com.invoice2x.service.ExportJob;
+import com.invoice2x.service.ExportOptions;
+import com.invoice2x.service.ExportScheduler;
+import com.invoice2x.service.ThrottledProgressListener;
+import com.invoice2x.util.ConfigManager;
 import com.invoice2x.ui.MainFrame;
 import com.invoice2x.util.UIConstants;
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.sql.SQLException;
 
 
@@ -22,12 +32,27 @@ public class ExportPanel extends JPanel {
     private MainFrame mainFrame;
     private JRadioButton exportAllRadio;
     private JRadioButton exportDateRangeRadio;
+    private JRadioButton exportChangesRadio;
     private JTextField startDateField;
     private JTextField endDateField;
     private JTextField filePathField;
+    private JCheckBox streamingCheckbox;
+    private JComboBox<ExportOptions.Format> formatCombo;
+    private JComboBox<ExportOptions.ShardMode> shardCombo;
+    private JCheckBox zipShardsCheckbox;
+    private JTextField templateField;
+    private JButton templateButton;
     private JProgressBar progressBar;
     private JLabel progressLabel;
     private JButton exportButton;
+    private JButton stopButton;
+    private JComboBox<ExportJob.Priority> priorityCombo;
+    private DefaultTableModel jobsTableModel;
+    private JTable jobsTable;
+    private Timer jobsTimer;
+    private List<ExportJob> shownJobs = new java.util.ArrayList<>();
+    // The job whose progress the progress bar follows: the last one submitted here
+    private volatile ExportJob latestJob;
     // Optional single-invoice export target (can be passed into constructor)
     private Invoice selectedInvoice;
     
@@ -69,10 +94,15 @@ public class ExportPanel extends JPanel {
         exportButton.setPreferredSize(UIConstants.BUTTON_LARGE);
         exportButton.addActionListener(e -> performExport());
         
+        stopButton = UIConstants.createDangerButton("Stop");
+        stopButton.setEnabled(false);
+        stopButton.addActionListener(e -> stopExport());
+        
         JButton cancelBtn = UIConstants.createSecondaryButton("Cancel");
         cancelBtn.addActionListener(e -> mainFrame.showPanel("dashboard"));
         
         buttonPanel.add(exportButton);
+        buttonPanel.add(stopButton);
         buttonPanel.add(cancelBtn);
         
         panel.add(titleLabel, BorderLayout.WEST);
@@ -96,6 +126,9 @@ public class ExportPanel extends JPanel {
         panel.add(Box.createRigidArea(new Dimension(0, 16)));
         
         panel.add(createProgressSection());
+        panel.add(Box.createRigidArea(new Dimension(0, 16)));
+        
+        panel.add(createJobsSection());
         panel.add(Box.createRigidArea(new Dimension(0, 24)));
         
         panel.add(createBottomButton());
@@ -106,7 +139,7 @@ public class ExportPanel extends JPanel {
     private JPanel createSelectionSection() {
         JPanel section = UIConstants.createTitledPanel("Select Invoices to Export");
         section.setAlignmentX(Component.LEFT_ALIGNMENT);
-        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 200));
+        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 240));
         
         ButtonGroup group = new ButtonGroup();
         
@@ -121,8 +154,14 @@ public class ExportPanel extends JPanel {
         exportDateRangeRadio.setForeground(UIConstants.TEXT_DARK);
         exportDateRangeRadio.setBackground(UIConstants.BG_CARD);
         
+        exportChangesRadio = new JRadioButton("Export only invoices added or changed since the last incremental export");
+        exportChangesRadio.setFont(UIConstants.BODY_FONT);
+        exportChangesRadio.setForeground(UIConstants.TEXT_DARK);
+        exportChangesRadio.setBackground(UIConstants.BG_CARD);
+        
         group.add(exportAllRadio);
         group.add(exportDateRangeRadio);
+        group.add(exportChangesRadio);
         
         JPanel datePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 10));
         datePanel.setBackground(UIConstants.BG_CARD);
@@ -146,6 +185,7 @@ public class ExportPanel extends JPanel {
         section.add(Box.createRigidArea(new Dimension(0, 8)));
         section.add(exportDateRangeRadio);
         section.add(datePanel);
+        section.add(exportChangesRadio);
         
         return section;
     }
@@ -153,7 +193,24 @@ public class ExportPanel extends JPanel {
     private JPanel createOptionsSection() {
         JPanel section = UIConstants.createTitledPanel("LibreOffice Compatibility");
         section.setAlignmentX(Component.LEFT_ALIGNMENT);
-        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 160));
+        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 300));
+        
+        JPanel formatPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 0));
+        formatPanel.setBackground(UIConstants.BG_CARD);
+        formatPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        formatCombo = new JComboBox<>(ExportOptions.Format.values());
+        formatCombo.setFont(UIConstants.BODY_FONT);
+        formatCombo.setSelectedItem(ExportOptions.fromConfig(ConfigManager.getInstance()).getFormat());
+        
+        formatPanel.add(UIConstants.createLabel("Format:"));
+        formatPanel.add(formatCombo);
+        
+        priorityCombo = new JComboBox<>(ExportJob.Priority.values());
+        priorityCombo.setFont(UIConstants.BODY_FONT);
+        priorityCombo.setSelectedItem(ExportJob.Priority.NORMAL);
+        formatPanel.add(UIConstants.createLabel("Priority:"));
+        formatPanel.add(priorityCombo);
         
         JCheckBox optimizeCheckbox = new JCheckBox("Optimize for LibreOffice Calc");
         optimizeCheckbox.setFont(UIConstants.BODY_FONT);
@@ -167,19 +224,119 @@ public class ExportPanel extends JPanel {
         simpleFormatCheckbox.setBackground(UIConstants.BG_CARD);
         simpleFormatCheckbox.setSelected(true);
         
+        streamingCheckbox = new JCheckBox("Low-memory streaming (recommended for large exports)");
+        streamingCheckbox.setFont(UIConstants.BODY_FONT);
+        streamingCheckbox.setForeground(UIConstants.TEXT_DARK);
+        streamingCheckbox.setBackground(UIConstants.BG_CARD);
+        streamingCheckbox.setSelected(ConfigManager.getInstance().getBooleanProperty("export.streaming", true));
+        
+        // Only the sheet-per-invoice layout can be built in memory; everything else streams
+        JPanel templatePanel = createTemplatePanel();
+        formatCombo.addActionListener(e -> {
+            boolean sheetPerInvoice = getSelectedFormat() == ExportOptions.Format.SHEET_PER_INVOICE;
+            streamingCheckbox.setEnabled(sheetPerInvoice);
+            templateField.setEnabled(sheetPerInvoice);
+            templateButton.setEnabled(sheetPerInvoice);
+            updateDefaultFilename();
+        });
+        streamingCheckbox.setEnabled(getSelectedFormat() == ExportOptions.Format.SHEET_PER_INVOICE);
+        
         JLabel infoLabel = new JLabel("<html><i> These options ensure maximum compatibility</i></html>");
         infoLabel.setFont(UIConstants.SMALL_FONT);
         infoLabel.setForeground(UIConstants.TEXT_MEDIUM);
         
+        section.add(formatPanel);
+        section.add(Box.createRigidArea(new Dimension(0, 8)));
         section.add(optimizeCheckbox);
         section.add(Box.createRigidArea(new Dimension(0, 8)));
         section.add(simpleFormatCheckbox);
         section.add(Box.createRigidArea(new Dimension(0, 8)));
+        section.add(streamingCheckbox);
+        section.add(Box.createRigidArea(new Dimension(0, 8)));
+        section.add(templatePanel);
+        section.add(Box.createRigidArea(new Dimension(0, 8)));
+        section.add(createShardPanel());
+        section.add(Box.createRigidArea(new Dimension(0, 8)));
         section.add(infoLabel);
         
         return section;
     }
     
+    // Branded .xlsx stamped for every invoice sheet; empty uses the built-in layout
+    private JPanel createTemplatePanel() {
+        JPanel templatePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 0));
+        templatePanel.setBackground(UIConstants.BG_CARD);
+        templatePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        templateField = UIConstants.createStyledTextField();
+        templateField.setPreferredSize(new Dimension(320, 34));
+        templateField.setText(ExportOptions.fromConfig(ConfigManager.getInstance()).getTemplateFile());
+        templateField.setToolTipText("Leave empty for the built-in layout");
+        
+        templateButton = UIConstants.createSecondaryButton("Browse");
+        templateButton.addActionListener(e -> browseForTemplate());
+        
+        boolean sheetPerInvoice = getSelectedFormat() == ExportOptions.Format.SHEET_PER_INVOICE;
+        templateField.setEnabled(sheetPerInvoice);
+        templateButton.setEnabled(sheetPerInvoice);
+        
+        templatePanel.add(UIConstants.createLabel("Template:"));
+        templatePanel.add(templateField);
+        templatePanel.add(templateButton);
+        
+        return templatePanel;
+    }
+    
+    private void browseForTemplate() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Choose Invoice Sheet Template");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Excel workbooks (*.xlsx)", "xlsx"));
+        if (!templateField.getText().trim().isEmpty()) {
+            fileChooser.setSelectedFile(new File(templateField.getText().trim()));
+        }
+        
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            String path = fileChooser.getSelectedFile().getAbsolutePath();
+            templateField.setText(path);
+            // Remembered for the next export
+            ConfigManager config = ConfigManager.getInstance();
+            config.setProperty("export.template_file", path);
+            config.save();
+        }
+    }
+    
+    // Large exports can be split into one file per shard, optionally zipped together
+    private JPanel createShardPanel() {
+        ExportOptions defaults = ExportOptions.fromConfig(ConfigManager.getInstance());
+        
+        JPanel shardPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 0));
+        shardPanel.setBackground(UIConstants.BG_CARD);
+        shardPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        shardCombo = new JComboBox<>(ExportOptions.ShardMode.values());
+        shardCombo.setFont(UIConstants.BODY_FONT);
+        shardCombo.setSelectedItem(defaults.getShardMode());
+        
+        zipShardsCheckbox = new JCheckBox("Bundle into a ZIP");
+        zipShardsCheckbox.setFont(UIConstants.BODY_FONT);
+        zipShardsCheckbox.setForeground(UIConstants.TEXT_DARK);
+        zipShardsCheckbox.setBackground(UIConstants.BG_CARD);
+        zipShardsCheckbox.setSelected(defaults.isZipShards());
+        zipShardsCheckbox.setEnabled(getSelectedShardMode() != ExportOptions.ShardMode.NONE);
+        
+        shardCombo.addActionListener(e -> {
+            zipShardsCheckbox.setEnabled(getSelectedShardMode() != ExportOptions.ShardMode.NONE);
+            updateDefaultFilename();
+        });
+        zipShardsCheckbox.addActionListener(e -> updateDefaultFilename());
+        
+        shardPanel.add(UIConstants.createLabel("Split:"));
+        shardPanel.add(shardCombo);
+        shardPanel.add(zipShardsCheckbox);
+        
+        return shardPanel;
+    }
+    
     private JPanel createOutputSection() {
         JPanel section = UIConstants.createTitledPanel("Output Location");
         section.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -247,10 +404,25 @@ public void setSelectedInvoiceNumbers(List<String> invoiceNumbers) {
     private void updateDefaultFilename() {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         String defaultPath = System.getProperty("user.home") + File.separator + 
-                           "Invoices_" + timestamp + ".xlsx";
+                           "Invoices_" + timestamp + "." + getOutputExtension();
         filePathField.setText(defaultPath);
     }
     
+    private ExportOptions.Format getSelectedFormat() {
+        return (ExportOptions.Format) formatCombo.getSelectedItem();
+    }
+    
+    private ExportOptions.ShardMode getSelectedShardMode() {
+        return (ExportOptions.ShardMode) shardCombo.getSelectedItem();
+    }
+    
+    private String getOutputExtension() {
+        if (shardCombo != null && getSelectedShardMode() != ExportOptions.ShardMode.NONE && zipShardsCheckbox.isSelected()) {
+            return "zip";
+        }
+        return getSelectedFormat().getExtension();
+    }
+    
     private JPanel createProgressSection() {
         JPanel section = UIConstants.createTitledPanel("Export Progress");
         section.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -291,141 +463,342 @@ public void setSelectedInvoiceNumbers(List<String> invoiceNumbers) {
     
     private void browseForFile() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Save Excel File");
+        fileChooser.setDialogTitle("Save Export File");
         fileChooser.setSelectedFile(new File(filePathField.getText()));
         
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             String path = fileChooser.getSelectedFile().getAbsolutePath();
-            if (!path.toLowerCase().endsWith(".xlsx")) {
-                path += ".xlsx";
+            String extension = "." + getOutputExtension();
+            if (!path.toLowerCase().endsWith(extension)) {
+                path += extension;
             }
             filePathField.setText(path);
         }
     }
     
    
+    private JPanel createJobsSection() {
+        JPanel section = UIConstants.createTitledPanel("Export Jobs");
+        section.setAlignmentX(Component.LEFT_ALIGNMENT);
+        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 240));
+        
+        String[] columnNames = {"#", "Export", "Format", "Priority", "Status", "Progress", "Waited", "Ran", "File"};
+        jobsTableModel = new DefaultTableModel(columnNames, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        
+        jobsTable = new JTable(jobsTableModel);
+        jobsTable.setFont(UIConstants.BODY_FONT);
+        jobsTable.setForeground(UIConstants.TEXT_DARK);
+        jobsTable.setBackground(UIConstants.BG_WHITE);
+        jobsTable.setRowHeight(28);
+        jobsTable.getTableHeader().setFont(UIConstants.TITLE_FONT);
+        jobsTable.getTableHeader().setBackground(UIConstants.BG_LIGHT);
+        jobsTable.getTableHeader().setForeground(UIConstants.TEXT_DARK);
+        jobsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        jobsTable.setGridColor(UIConstants.BORDER_LIGHT);
+        jobsTable.setSelectionBackground(UIConstants.PRIMARY_LIGHT);
+        jobsTable.getColumnModel().getColumn(0).setPreferredWidth(40);
+        jobsTable.getColumnModel().getColumn(1).setPreferredWidth(180);
+        jobsTable.getColumnModel().getColumn(8).setPreferredWidth(260);
+        jobsTable.getSelectionModel().addListSelectionListener(e -> updateStopButton());
+        
+        JScrollPane scrollPane = new JScrollPane(jobsTable);
+        scrollPane.setPreferredSize(new Dimension(0, 180));
+        scrollPane.setAlignmentX(Component.LEFT_ALIGNMENT);
+        section.add(scrollPane);
+        
+        // Jobs run on scheduler threads; poll them only while this panel is on screen
+        jobsTimer = new Timer(500, e -> refreshJobs());
+        addHierarchyListener(e -> {
+            if (isShowing()) {
+                refreshJobs();
+                jobsTimer.start();
+            } else {
+                jobsTimer.stop();
+            }
+        });
+        
+        return section;
+    }
+    
+    private void refreshJobs() {
+        int selectedRow = jobsTable.getSelectedRow();
+        ExportJob selected = selectedRow >= 0 && selectedRow < shownJobs.size() ? shownJobs.get(selectedRow) : null;
+        
+        shownJobs = ExportScheduler.getInstance().getJobs();
+        jobsTableModel.setRowCount(0);
+        for (ExportJob job : shownJobs) {
+            String progress = job.getTotal() > 0 ? job.getDone() + " / " + job.getTotal() : "";
+            jobsTableModel.addRow(new Object[]{
+                job.getId(),
+                job.getName(),
+                job.getOptions().getFormat(),
+                job.getPriority(),
+                job.getState() == ExportJob.State.FAILED ? "Failed: " + job.getErrorMessage() : job.getState().toString(),
+                progress,
+                formatDuration(job.getWaitMillis()),
+                job.getStartedAt() != 0 ? formatDuration(job.getRunMillis()) : "",
+                job.getFilePath()
+            });
+        }
+        
+        int index = shownJobs.indexOf(selected);
+        if (index >= 0) {
+            jobsTable.setRowSelectionInterval(index, index);
+        }
+        showLatestJobState();
+        updateStopButton();
+    }
+    
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000;
+        return seconds >= 60 ? (seconds / 60) + "m " + (seconds % 60) + "s" : String.format("%.1fs", millis / 1000.0);
+    }
+    
+    // Progress events only cover a running job; queued and finished states come from here
+    private void showLatestJobState() {
+        ExportJob job = latestJob;
+        if (job == null) {
+            return;
+        }
+        switch (job.getState()) {
+            case QUEUED:
+                progressLabel.setText("Waiting for a free export slot...");
+                progressLabel.setForeground(UIConstants.TEXT_MEDIUM);
+                break;
+            case COMPLETED:
+                progressBar.setValue(100);
+                progressLabel.setText("Export completed successfully!");
+                progressLabel.setForeground(UIConstants.SUCCESS_COLOR);
+                break;
+            case CANCELLED:
+                progressBar.setValue(0);
+                progressLabel.setText("Export cancelled");
+                progressLabel.setForeground(UIConstants.TEXT_MEDIUM);
+                break;
+            case FAILED:
+                progressLabel.setText("Export failed: " + job.getErrorMessage());
+                progressLabel.setForeground(UIConstants.DANGER_COLOR);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    // Stop applies to the selected job, or to the last one submitted from this panel
+    private ExportJob stopTarget() {
+        int row = jobsTable.getSelectedRow();
+        if (row >= 0 && row < shownJobs.size()) {
+            return shownJobs.get(row);
+        }
+        return latestJob;
+    }
+    
+    private void updateStopButton() {
+        ExportJob job = stopTarget();
+        stopButton.setEnabled(job != null && !job.getState().isFinished());
+    }
+    
+    private void stopExport() {
+        ExportJob job = stopTarget();
+        if (job != null) {
+            job.cancel();
+            stopButton.setEnabled(false);
+            refreshJobs();
+        }
+    }
+    
     private void performExport() {
-    updateDefaultFilename();
+        // Offer to pick up exports that were interrupted by a crash or failure
+        List<ExportCheckpoint> interrupted = ExportCheckpoint.loadInterrupted();
+        if (!interrupted.isEmpty()) {
+            int choice = JOptionPane.showConfirmDialog(this,
+                interrupted.size() + " earlier export(s) did not finish, e.g. " +
+                interrupted.get(0).getFilePath() + " (" + interrupted.get(0).getDone() + " of " +
+                interrupted.get(0).getTotal() + " invoices written).\n" +
+                "Resume them now? Choose No to discard them, deleting their partial files, and start a new export.",
+                "Resume Export",
+                JOptionPane.YES_NO_CANCEL_OPTION);
+            
+            if (choice == JOptionPane.YES_OPTION) {
+                for (ExportCheckpoint checkpoint : interrupted) {
+                    ExportOptions options = ExportOptions.fromConfig(ConfigManager.getInstance());
+                    options.setStreaming(streamingCheckbox.isSelected());
+                    ExportJob job = ExportJob.resume(checkpoint, options);
+                    job.setPriority((ExportJob.Priority) priorityCombo.getSelectedItem());
+                    submit(job);
+                }
+                return;
+            }
+            if (choice != JOptionPane.NO_OPTION) {
+                return;
+            }
+            for (ExportCheckpoint checkpoint : interrupted) {
+                try {
+                    checkpoint.discard();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        
+        updateDefaultFilename();
         exportButton.setEnabled(false);
         progressBar.setValue(0);
         progressLabel.setText("Preparing export...");
         progressLabel.setForeground(UIConstants.PRIMARY_COLOR);
-    SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-        private String errorMessage = null;
-        private List<Invoice> invoicesToExport = null;
-
-        @Override
-       protected Void doInBackground() {
-    try {
-        DatabaseService db = DatabaseService.getInstance();
+        
+        String filePath = filePathField.getText();
+        ExportOptions options = ExportOptions.fromConfig(ConfigManager.getInstance());
+        options.setStreaming(streamingCheckbox.isSelected());
+        options.setFormat(getSelectedFormat());
+        options.setShardMode(getSelectedShardMode());
+        options.setZipShards(zipShardsCheckbox.isSelected());
+        options.setTemplateFile(templateField.getText());
+        ExportJob.Priority priority = (ExportJob.Priority) priorityCombo.getSelectedItem();
+        boolean exportAll = exportAllRadio.isSelected();
+        boolean exportChanges = exportChangesRadio.isSelected();
+        String startText = startDateField.getText().trim();
+        String endText = endDateField.getText().trim();
+        
+        // Only the lookup runs here; the export itself is queued on the scheduler
+        SwingWorker<ExportJob, Void> worker = new SwingWorker<ExportJob, Void>() {
+            private String errorMessage = null;
 
-        if (selectedInvoice != null) {
-            // SINGLE INVOICE export (already working)
-            invoicesToExport = new java.util.ArrayList<>();
-            Invoice full = db.getInvoiceById(selectedInvoice.getId());
-            if (full == null) {
-                errorMessage = "Selected invoice not found in database";
-                return null;
-            }
-            if (full.getItems() == null) {
-                full.setItems(new java.util.ArrayList<>());
-            } else {
-                full.setItems(new java.util.ArrayList<>(full.getItems()));
-            }
-            invoicesToExport.add(full);
+            @Override
+            protected ExportJob doInBackground() {
+                try {
+                    DatabaseService db = DatabaseService.getInstance();
 
-            System.out.println("DEBUG: Exporting SINGLE invoice - " +
-                               full.getInvoiceNumber() + " - Items: " + full.getItems().size());
+                    if (selectedInvoice != null) {
+                        // SINGLE INVOICE export (already working)
+                        List<Invoice> invoicesToExport = new java.util.ArrayList<>();
+                        Invoice full = db.getInvoiceById(selectedInvoice.getId());
+                        if (full == null) {
+                            errorMessage = "Selected invoice not found in database";
+                            return null;
+                        }
+                        if (full.getItems() == null) {
+                            full.setItems(new java.util.ArrayList<>());
+                        } else {
+                            full.setItems(new java.util.ArrayList<>(full.getItems()));
+                        }
+                        invoicesToExport.add(full);
 
-        } else if (preloadedInvoices != null && !preloadedInvoices.isEmpty()) {
-            // MULTI-SELECT from list
-            invoicesToExport = new java.util.ArrayList<>();
+                        return ExportJob.forInvoices(full.getInvoiceNumber(), invoicesToExport, options, filePath);
 
-            for (Invoice inv : preloadedInvoices) {
-                Invoice full = db.getInvoiceById(inv.getId());
-                if (full != null) {
-                    if (full.getItems() == null) {
-                        full.setItems(new java.util.ArrayList<>());
-                    } else {
-                        full.setItems(new java.util.ArrayList<>(full.getItems()));
-                    }
-                    invoicesToExport.add(full);
-                }
-            }
+                    } else if (preloadedInvoices != null && !preloadedInvoices.isEmpty()) {
+                        // MULTI-SELECT from list
+                        java.util.List<Integer> ids = new java.util.ArrayList<>();
+                        for (Invoice inv : preloadedInvoices) {
+                            ids.add(inv.getId());
+                        }
+                        List<Invoice> invoicesToExport = db.getInvoicesByIds(ids);
 
-            System.out.println("DEBUG: Exporting SELECTED invoices - Count: " + invoicesToExport.size());
+                        return ExportJob.forInvoices(invoicesToExport.size() + " selected invoices",
+                                                     invoicesToExport, options, filePath);
 
-        } else {
-            // ORIGINAL batch (all/date range) for menu/sidebar Export
-            if (exportAllRadio.isSelected()) {
-                invoicesToExport = db.getAllInvoices();
-                System.out.println("DEBUG: Exporting ALL invoices - Count: " + invoicesToExport.size());
-            } else {
-                LocalDate startDate = LocalDate.parse(startDateField.getText());
-                LocalDate endDate = LocalDate.parse(endDateField.getText());
+                    } else {
+                        // ORIGINAL batch (all/date range) for menu/sidebar Export.
+                        // Streamed from a database cursor instead of loading every invoice first
+                        if (exportChanges) {
+                            ExportJob job = ExportJob.incremental(options, filePath);
+                            if (db.countInvoices(job.getCriteria()) == 0) {
+                                errorMessage = "No invoices added or changed since the last incremental export";
+                                return null;
+                            }
+                            return job;
+                        }
+                        
+                        ExportCriteria criteria;
+                        String name;
+                        if (exportAll) {
+                            criteria = new ExportCriteria();
+                            name = "All invoices";
+                        } else {
+                            LocalDate startDate = LocalDate.parse(startText);
+                            LocalDate endDate = LocalDate.parse(endText);
+                            criteria = ExportCriteria.dateRange(startDate, endDate);
+                            name = startDate + " to " + endDate;
+                        }
 
-                java.util.List<Invoice> allInvoices = db.getAllInvoices();
-                invoicesToExport = new java.util.ArrayList<>();
-                for (Invoice inv : allInvoices) {
-                    if (!inv.getInvoiceDate().isBefore(startDate) &&
-                        !inv.getInvoiceDate().isAfter(endDate)) {
-                        invoicesToExport.add(inv);
+                        if (db.countInvoices(criteria) == 0) {
+                            errorMessage = "No invoices found to export";
+                            return null;
+                        }
+                        return ExportJob.forCriteria(name, criteria, options, filePath);
                     }
-                }
-                System.out.println("DEBUG: Exporting date range - Count: " + invoicesToExport.size());
-            }
 
-            if (invoicesToExport == null || invoicesToExport.isEmpty()) {
-                errorMessage = "No invoices found to export";
+                } catch (Exception e) {
+                    errorMessage = e.getMessage();
+                    e.printStackTrace();
+                }
                 return null;
             }
-        }
 
-                String filePath = filePathField.getText();
-                ExcelExportService exportService = ExcelExportService.getInstance();
-
-                exportService.exportInvoices(invoicesToExport, filePath,
-                    new ExcelExportService.ExportProgressListener() {
-                        @Override
-                        public void onProgress(int current, int total, String message) {
-                            SwingUtilities.invokeLater(() -> {
-                                int percent = (int) ((current / (double) total) * 100);
-                                progressBar.setValue(percent);
-                                progressLabel.setText(message);
-                                progressLabel.setForeground(UIConstants.PRIMARY_COLOR);
-                            });
-                        }
-
-                        @Override
-                        public void onComplete(String filePath) {
-                            SwingUtilities.invokeLater(() -> {
-                                progressBar.setValue(100);
-                                progressLabel.setText("Export completed successfully!");
-                                progressLabel.setForeground(UIConstants.SUCCESS_COLOR);
-                            });
-                        }
+            @Override
+            protected void done() {
+                exportButton.setEnabled(true);
+                
+                ExportJob job = null;
+                try {
+                    job = get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                
+                if (job != null) {
+                    job.setPriority(priority);
+                    submit(job);
+                } else if (errorMessage != null) {
+                    progressLabel.setText("Export failed: " + errorMessage);
+                    progressLabel.setForeground(UIConstants.DANGER_COLOR);
+                }
+            }
+        };
 
-                        @Override
-                        public void onError(Exception e) {
-                            errorMessage = e.getMessage();
+        worker.execute();
+    }
+    
+    private void submit(ExportJob job) {
+        // Exporters report every invoice; the panel only needs a few repaints a second
+        job.setListener(new ThrottledProgressListener(
+            new ExcelExportService.ExportProgressListener() {
+                @Override
+                public void onProgress(int current, int total, String message) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (job != latestJob) {
+                            return;
                         }
+                        int percent = (int) ((current / (double) total) * 100);
+                        progressBar.setValue(percent);
+                        progressLabel.setText(message);
+                        progressLabel.setForeground(UIConstants.PRIMARY_COLOR);
                     });
+                }
 
-            } catch (Exception e) {
-                errorMessage = e.getMessage();
-                e.printStackTrace();
-            }
-            return null;
-        }
+                @Override
+                public void onComplete(String filePath) {
+                }
 
-        @Override
-        protected void done() {
-            exportButton.setEnabled(true);
-            // keep your existing JOptionPane and open-folder code
+                @Override
+                public void onError(Exception e) {
+                }
+            }));
+        
+        try {
+            ExportScheduler.getInstance().submit(job);
+            latestJob = job;
+            progressBar.setValue(0);
+        } catch (RejectedExecutionException e) {
+            progressLabel.setText("Export not started: " + e.getMessage());
+            progressLabel.setForeground(UIConstants.DANGER_COLOR);
         }
-    };
-
-    worker.execute();
-}
+        refreshJobs();
+    }
 }
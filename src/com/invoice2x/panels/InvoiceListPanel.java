@@ -1,7 +1,9 @@
 package com.invoice2x.ui.panels;
 
 import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceSummary;
 import com.invoice2x.service.DatabaseService;
+import com.invoice2x.service.InvoiceQuery;
 import com.invoice2x.ui.MainFrame;
 import com.invoice2x.util.UIConstants;
 import javax.swing.*;
@@ -12,11 +14,19 @@ import java.util.List;
 
 public class InvoiceListPanel extends JPanel {
     
+    private static final int ID_COLUMN = 7;
+    
     private MainFrame mainFrame;
     private DefaultTableModel tableModel;
     private JTable table;
     private JTextField searchField;
     private JComboBox<String> filterCombo;
+    private JComboBox<InvoiceQuery.SortOrder> sortCombo;
+    private JButton loadMoreBtn;
+    private JLabel countLabel;
+    private Timer searchTimer;
+    // Last row of the loaded pages, used as the keyset cursor for the next page
+    private InvoiceSummary lastLoaded;
     
     public InvoiceListPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -80,6 +90,15 @@ public class InvoiceListPanel extends JPanel {
         searchField.setPreferredSize(new Dimension(250, 38));
         searchField.addActionListener(e -> refreshData());
         
+        // Search as you type, once typing pauses
+        searchTimer = new Timer(300, e -> refreshData());
+        searchTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { searchTimer.restart(); }
+        });
+        
         JLabel filterLabel = UIConstants.createLabel("Filter:");
         
         String[] filters = {"All", "Draft", "Pending", "Paid", "Overdue", "Cancelled"};
@@ -90,6 +109,15 @@ public class InvoiceListPanel extends JPanel {
         filterCombo.setPreferredSize(new Dimension(150, 38));
         filterCombo.addActionListener(e -> refreshData());
         
+        JLabel sortLabel = UIConstants.createLabel("Sort:");
+        
+        sortCombo = new JComboBox<>(InvoiceQuery.SortOrder.values());
+        sortCombo.setFont(UIConstants.BODY_FONT);
+        sortCombo.setBackground(UIConstants.BG_WHITE);
+        sortCombo.setForeground(UIConstants.TEXT_DARK);
+        sortCombo.setPreferredSize(new Dimension(150, 38));
+        sortCombo.addActionListener(e -> refreshData());
+        
         JButton searchBtn = UIConstants.createPrimaryButton("Search");
         searchBtn.addActionListener(e -> refreshData());
         
@@ -97,6 +125,8 @@ public class InvoiceListPanel extends JPanel {
         toolbar.add(searchField);
         toolbar.add(filterLabel);
         toolbar.add(filterCombo);
+        toolbar.add(sortLabel);
+        toolbar.add(sortCombo);
         toolbar.add(searchBtn);
         
         // Table with action buttons
@@ -105,18 +135,34 @@ public class InvoiceListPanel extends JPanel {
         scrollPane.setBorder(BorderFactory.createLineBorder(UIConstants.BORDER_LIGHT));
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
         
+        // Paging footer
+        JPanel footer = new JPanel(new BorderLayout());
+        footer.setBackground(UIConstants.BG_LIGHT);
+        footer.setBorder(BorderFactory.createEmptyBorder(12, 0, 0, 0));
+        
+        countLabel = UIConstants.createLabel("");
+        
+        loadMoreBtn = UIConstants.createSecondaryButton("Load More");
+        loadMoreBtn.setEnabled(false);
+        loadMoreBtn.addActionListener(e -> loadNextPage());
+        
+        footer.add(countLabel, BorderLayout.WEST);
+        footer.add(loadMoreBtn, BorderLayout.EAST);
+        
         mainPanel.add(toolbar, BorderLayout.NORTH);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
+        mainPanel.add(footer, BorderLayout.SOUTH);
         
         return mainPanel;
     }
     
     private void createTable() {
-        String[] columnNames = {"Select", "Invoice #", "Customer", "Date", "Amount", "Status", "Actions"};
+        String[] columnNames = {"Select", "Invoice #", "Customer", "Date", "Amount", "Status", "Actions", "Id"};
         tableModel = new DefaultTableModel(columnNames, 0) {
             @Override
             public Class<?> getColumnClass(int column) {
                 if (column == 0) return Boolean.class;
+                if (column == ID_COLUMN) return Integer.class;
                 return String.class;
             }
             
@@ -150,6 +196,9 @@ public class InvoiceListPanel extends JPanel {
         // Add custom renderer for Actions column with buttons
         table.getColumnModel().getColumn(6).setCellRenderer(new ActionButtonRenderer());
         table.getColumnModel().getColumn(6).setCellEditor(new ActionButtonEditor(new JCheckBox()));
+        
+        // Invoice id stays in the model for lookups but is not displayed
+        table.removeColumn(table.getColumnModel().getColumn(ID_COLUMN));
     }
     class ActionButtonRenderer extends JPanel implements TableCellRenderer {
         private JButton viewBtn;
@@ -244,15 +293,11 @@ public class InvoiceListPanel extends JPanel {
     
     private void viewInvoice(int row) {
         try {
-            String invoiceNumber = tableModel.getValueAt(row, 1).toString();
-            DatabaseService db = DatabaseService.getInstance();
-            List<Invoice> allInvoices = db.getAllInvoices();
+            int invoiceId = (Integer) tableModel.getValueAt(row, ID_COLUMN);
+            Invoice invoice = DatabaseService.getInstance().getInvoiceById(invoiceId);
             
-            for (Invoice inv : allInvoices) {
-                if (inv.getInvoiceNumber().equals(invoiceNumber)) {
-                    showInvoiceViewDialog(inv);
-                    break;
-                }
+            if (invoice != null) {
+                showInvoiceViewDialog(invoice);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -264,26 +309,8 @@ public class InvoiceListPanel extends JPanel {
     }
     
     private void editInvoice(int row) {
-        try {
-            String invoiceNumber = tableModel.getValueAt(row, 1).toString();
-            DatabaseService db = DatabaseService.getInstance();
-            List<Invoice> allInvoices = db.getAllInvoices();
-            
-            for (Invoice inv : allInvoices) {
-                if (inv.getInvoiceNumber().equals(invoiceNumber)) {
-                    System.out.println("DEBUG: Editing invoice ID: " + inv.getId() + 
-                                     " - " + inv.getInvoiceNumber());
-                    mainFrame.editInvoice(inv.getId());
-                    break;
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                "Error loading invoice: " + e.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
-        }
+        int invoiceId = (Integer) tableModel.getValueAt(row, ID_COLUMN);
+        mainFrame.editInvoice(invoiceId);
     }
     private void showInvoiceViewDialog(Invoice invoice) {
         JDialog dialog = new JDialog((Frame) SwingUtilities.getWindowAncestor(this), 
@@ -374,30 +401,24 @@ public class InvoiceListPanel extends JPanel {
     }
     
     public void refreshData() {
+        searchTimer.stop();
+        tableModel.setRowCount(0);
+        lastLoaded = null;
+        loadNextPage();
+    }
+    
+    private void loadNextPage() {
         try {
-            DatabaseService db = DatabaseService.getInstance();
-            List<Invoice> invoices = db.getAllInvoices();
-            
-            String searchTerm = searchField.getText().toLowerCase();
-            String filter = filterCombo.getSelectedItem().toString();
+            InvoiceQuery query = new InvoiceQuery();
+            query.setSearchTerm(searchField.getText());
+            query.setStatus(getSelectedStatus());
+            query.setSortOrder((InvoiceQuery.SortOrder) sortCombo.getSelectedItem());
+            query.setAfter(lastLoaded);
             
-            tableModel.setRowCount(0);
+            DatabaseService db = DatabaseService.getInstance();
+            List<InvoiceSummary> page = db.findInvoiceSummaries(query);
             
-            for (Invoice inv : invoices) {
-                // Apply search filter
-                if (!searchTerm.isEmpty()) {
-                    boolean matches = inv.getInvoiceNumber().toLowerCase().contains(searchTerm) ||
-                                    inv.getCustomerName().toLowerCase().contains(searchTerm);
-                    if (!matches) continue;
-                }
-                
-                // Apply status filter
-                if (!filter.equals("All")) {
-                    if (!inv.getStatus().getDisplayName().equalsIgnoreCase(filter)) {
-                        continue;
-                    }
-                }
-                
+            for (InvoiceSummary inv : page) {
                 tableModel.addRow(new Object[]{
                     false,
                     inv.getInvoiceNumber(),
@@ -405,10 +426,16 @@ public class InvoiceListPanel extends JPanel {
                     inv.getInvoiceDate().toString(),
                     "$" + inv.getTotal(),
                     inv.getStatus().getDisplayName(),
-                    "" // Actions column (buttons rendered)
+                    "", // Actions column (buttons rendered)
+                    inv.getId()
                 });
+                lastLoaded = inv;
             }
             
+            // A full page means there may be more rows after it
+            loadMoreBtn.setEnabled(page.size() == query.getPageSize());
+            countLabel.setText("Showing " + tableModel.getRowCount() + " invoice(s)");
+            
         } catch (Exception e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(this,
@@ -418,6 +445,16 @@ public class InvoiceListPanel extends JPanel {
         }
     }
     
+    private Invoice.InvoiceStatus getSelectedStatus() {
+        String filter = filterCombo.getSelectedItem().toString();
+        for (Invoice.InvoiceStatus status : Invoice.InvoiceStatus.values()) {
+            if (status.getDisplayName().equalsIgnoreCase(filter)) {
+                return status;
+            }
+        }
+        return null; // "All"
+    }
+    
     private void exportSelected() {
     List<String> selectedInvoices = getSelectedInvoices();
     if (selectedInvoices.isEmpty()) {
@@ -433,7 +470,7 @@ public class InvoiceListPanel extends JPanel {
 }
     
     private void deleteSelected() {
-        List<String> selectedInvoices = getSelectedInvoices();
+        List<Integer> selectedInvoices = getSelectedInvoiceIds();
         if (selectedInvoices.isEmpty()) {
             JOptionPane.showMessageDialog(this,
                 "Please select at least one invoice to delete",
@@ -450,22 +487,12 @@ public class InvoiceListPanel extends JPanel {
         
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                DatabaseService db = DatabaseService.getInstance();
-                List<Invoice> allInvoices = db.getAllInvoices();
-                
-                for (String invoiceNumber : selectedInvoices) {
-                    for (Invoice inv : allInvoices) {
-                        if (inv.getInvoiceNumber().equals(invoiceNumber)) {
-                            db.deleteInvoice(inv.getId());
-                            break;
-                        }
-                    }
-                }
+                int deleted = DatabaseService.getInstance().deleteInvoices(selectedInvoices);
                 
                 refreshData();
                 
                 JOptionPane.showMessageDialog(this,
-                    "" + selectedInvoices.size() + " invoice(s) deleted successfully",
+                    "" + deleted + " invoice(s) deleted successfully",
                     "Success",
                     JOptionPane.INFORMATION_MESSAGE);
                     
@@ -489,4 +516,15 @@ public class InvoiceListPanel extends JPanel {
         }
         return selected;
     }
+    
+    private List<Integer> getSelectedInvoiceIds() {
+        List<Integer> selected = new java.util.ArrayList<>();
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            Boolean isSelected = (Boolean) tableModel.getValueAt(i, 0);
+            if (isSelected != null && isSelected) {
+                selected.add((Integer) tableModel.getValueAt(i, ID_COLUMN));
+            }
+        }
+        return selected;
+    }
 }
\ No newline at end of file
@@ -3,6 +3,9 @@ package com.invoice2x.ui.panels;
 import com.invoice2x.ui.MainFrame;
 import com.invoice2x.util.UIConstants;
 import com.invoice2x.util.ConfigManager;
+import com.invoice2x.service.DatabaseService;
+import com.invoice2x.service.ImportResult;
+import com.invoice2x.service.ImportService;
 import javax.swing.*;
 import java.awt.*;
 
@@ -15,6 +18,7 @@ public class SettingsPanel extends JPanel {
     private JTextField taxIdField;
     private JTextField taxRateField;
     private JTextField currencyField;
+    private JLabel importStatusLabel;
     
     public SettingsPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
@@ -149,7 +153,7 @@ public class SettingsPanel extends JPanel {
     private JPanel createDatabaseSection() {
         JPanel section = UIConstants.createTitledPanel("Database Maintenance");
         section.setAlignmentX(Component.LEFT_ALIGNMENT);
-        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 180));
+        section.setMaximumSize(new Dimension(Integer.MAX_VALUE, 200));
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 12));
         buttonPanel.setBackground(UIConstants.BG_CARD);
@@ -160,16 +164,33 @@ public class SettingsPanel extends JPanel {
         JButton compactBtn = UIConstants.createSecondaryButton("Compact Database");
         compactBtn.addActionListener(e -> compactDatabase());
         
+        JButton importBtn = UIConstants.createSecondaryButton("Import Invoices...");
+        importBtn.addActionListener(e -> importInvoices(importBtn));
+        
         buttonPanel.add(backupBtn);
         buttonPanel.add(compactBtn);
+        buttonPanel.add(importBtn);
         
         JLabel infoLabel = new JLabel("<html><i>Regular backups are recommended to prevent data loss</i></html>");
         infoLabel.setFont(UIConstants.SMALL_FONT);
         infoLabel.setForeground(UIConstants.TEXT_MEDIUM);
         
+        // Snapshot as of opening this screen
+        JLabel cacheLabel = new JLabel("Invoice cache: " + DatabaseService.getInstance().getInvoiceCache());
+        cacheLabel.setFont(UIConstants.SMALL_FONT);
+        cacheLabel.setForeground(UIConstants.TEXT_MEDIUM);
+        
         section.add(buttonPanel);
         section.add(Box.createRigidArea(new Dimension(0, 8)));
         section.add(infoLabel);
+        section.add(Box.createRigidArea(new Dimension(0, 4)));
+        section.add(cacheLabel);
+        
+        importStatusLabel = new JLabel(" ");
+        importStatusLabel.setFont(UIConstants.SMALL_FONT);
+        importStatusLabel.setForeground(UIConstants.TEXT_MEDIUM);
+        section.add(Box.createRigidArea(new Dimension(0, 4)));
+        section.add(importStatusLabel);
         
         return section;
     }
@@ -219,6 +240,7 @@ public class SettingsPanel extends JPanel {
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             try {
+                DatabaseService.getInstance().checkpoint();
                 java.nio.file.Files.copy(
                     java.nio.file.Paths.get("invoice2x.db"),
                     fileChooser.getSelectedFile().toPath(),
@@ -248,11 +270,7 @@ public class SettingsPanel extends JPanel {
         
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                java.sql.Connection conn = java.sql.DriverManager.getConnection("jdbc:sqlite:invoice2x.db");
-                java.sql.Statement stmt = conn.createStatement();
-                stmt.execute("VACUUM");
-                stmt.close();
-                conn.close();
+                DatabaseService.getInstance().compact();
                 
                 JOptionPane.showMessageDialog(this,
                     "Database compacted successfully!",
@@ -268,4 +286,65 @@ public class SettingsPanel extends JPanel {
             }
         }
     }
+    
+    private void importInvoices(JButton importBtn) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Invoices");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+            "Invoice files (*.csv, *.xlsx)", "csv", "xlsx"));
+        
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File file = fileChooser.getSelectedFile();
+        importBtn.setEnabled(false);
+        importStatusLabel.setText("Importing " + file.getName() + "...");
+        
+        // Progress comes from the import threads after every batch; only the latest count is shown
+        SwingWorker<ImportResult, ImportResult> worker = new SwingWorker<ImportResult, ImportResult>() {
+            @Override
+            protected ImportResult doInBackground() throws Exception {
+                return ImportService.getInstance().importFile(file, this::publish);
+            }
+            
+            @Override
+            protected void process(java.util.List<ImportResult> chunks) {
+                ImportResult progress = chunks.get(chunks.size() - 1);
+                importStatusLabel.setText(String.format("Importing %s: %,d rows (%,.0f rows/s)",
+                    file.getName(), progress.getRowsRead(), progress.getRowsPerSecond()));
+            }
+            
+            @Override
+            protected void done() {
+                importBtn.setEnabled(true);
+                try {
+                    ImportResult result = get();
+                    importStatusLabel.setText("Last import: " + result);
+                    
+                    StringBuilder message = new StringBuilder();
+                    message.append(String.format("Imported %,d invoices from %,d rows in %.1f s.",
+                        result.getInvoicesImported(), result.getRowsRead(), result.getElapsedMillis() / 1000.0));
+                    if (result.getErrorFile() != null) {
+                        message.append(String.format("%n%,d invoices (%,d rows) were rejected; see:%n%s",
+                            result.getInvoicesRejected(), result.getRowsRejected(),
+                            result.getErrorFile().getAbsolutePath()));
+                    }
+                    JOptionPane.showMessageDialog(SettingsPanel.this,
+                        message.toString(),
+                        "Import Complete",
+                        result.getErrorFile() != null ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                        
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    Throwable cause = e instanceof java.util.concurrent.ExecutionException ? e.getCause() : e;
+                    importStatusLabel.setText(" ");
+                    JOptionPane.showMessageDialog(SettingsPanel.this,
+                        "Error importing invoices: " + cause.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
 }
\ No newline at end of file
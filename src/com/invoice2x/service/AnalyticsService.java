@@ -0,0 +1,183 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+ // Revenue and receivables figures for the dashboard. The grouping runs in SQLite
+ // (over invoice_aggregates or a covering index), never over loaded invoices, and
+ // results are kept until the next invoice write.
+
+public class AnalyticsService {
+
+    // Issued invoices; drafts and cancelled invoices are not revenue
+    public static final Set<Invoice.InvoiceStatus> REVENUE_STATUSES =
+        Collections.unmodifiableSet(EnumSet.of(Invoice.InvoiceStatus.PENDING, Invoice.InvoiceStatus.PAID,
+                                               Invoice.InvoiceStatus.OVERDUE));
+    // Issued and not yet paid
+    public static final Set<Invoice.InvoiceStatus> OUTSTANDING_STATUSES =
+        Collections.unmodifiableSet(EnumSet.of(Invoice.InvoiceStatus.PENDING, Invoice.InvoiceStatus.OVERDUE));
+
+    private static AnalyticsService instance;
+
+    private final DatabaseService db;
+    // Results by query key, all computed at cacheVersion of the database
+    private final Map<String, Object> cache = new HashMap<>();
+    private long cacheVersion = -1;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private AnalyticsService(DatabaseService db) {
+        this.db = db;
+    }
+
+    public static synchronized AnalyticsService getInstance() {
+        if (instance == null) {
+            instance = new AnalyticsService(DatabaseService.getInstance());
+        }
+        return instance;
+    }
+
+    // Revenue for every month from..to, oldest first, with empty months included as zero
+    public Map<YearMonth, InvoiceTotals> getRevenueByMonth(YearMonth from, YearMonth to) throws SQLException {
+        return cached("month:" + from + ":" + to, () -> {
+            Map<YearMonth, InvoiceTotals> found = db.sumInvoiceTotalsByMonth(from, to, REVENUE_STATUSES);
+            Map<YearMonth, InvoiceTotals> months = new LinkedHashMap<>();
+            for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                months.put(month, found.getOrDefault(month, InvoiceTotals.ZERO));
+            }
+            return Collections.unmodifiableMap(months);
+        });
+    }
+
+    // The last count months up to and including the current one
+    public Map<YearMonth, InvoiceTotals> getRevenueByMonth(int count) throws SQLException {
+        YearMonth now = YearMonth.now();
+        return getRevenueByMonth(now.minusMonths(count - 1), now);
+    }
+
+    // The limit customers with the most revenue, highest first
+    public Map<String, InvoiceTotals> getTopCustomers(int limit) throws SQLException {
+        return cached("customers:" + limit, () ->
+            Collections.unmodifiableMap(db.sumInvoiceTotalsByCustomer(REVENUE_STATUSES, limit)));
+    }
+
+    // Outstanding invoices by how far past their due date they are on the given day
+    public Map<AgingBucket, InvoiceTotals> getAging(LocalDate today) throws SQLException {
+        return cached("aging:" + today, () -> {
+            Map<AgingBucket, InvoiceTotals> buckets = new EnumMap<>(AgingBucket.class);
+            for (AgingBucket bucket : AgingBucket.values()) {
+                buckets.put(bucket, InvoiceTotals.ZERO);
+            }
+            for (Map.Entry<LocalDate, InvoiceTotals> due : db.sumInvoiceTotalsByDueDate(OUTSTANDING_STATUSES).entrySet()) {
+                AgingBucket bucket = AgingBucket.forDaysOverdue(ChronoUnit.DAYS.between(due.getKey(), today));
+                buckets.put(bucket, buckets.get(bucket).add(due.getValue()));
+            }
+            return Collections.unmodifiableMap(buckets);
+        });
+    }
+
+    // Outstanding invoices whose due date has passed, whatever their status says
+    public InvoiceTotals getOverdue(LocalDate today) throws SQLException {
+        InvoiceTotals overdue = InvoiceTotals.ZERO;
+        for (Map.Entry<AgingBucket, InvoiceTotals> bucket : getAging(today).entrySet()) {
+            if (bucket.getKey().isOverdue()) {
+                overdue = overdue.add(bucket.getValue());
+            }
+        }
+        return overdue;
+    }
+
+    // Results are shared between callers, so they are immutable
+    @SuppressWarnings("unchecked")
+    private <T> T cached(String key, Query<T> query) throws SQLException {
+        // Taken before the query runs: a write that lands meanwhile leaves the result stale, and it is
+        // dropped at the next lookup
+        long version = db.getDataVersion();
+        synchronized (cache) {
+            if (version != cacheVersion) {
+                cache.clear();
+                cacheVersion = version;
+            }
+            Object value = cache.get(key);
+            if (value != null) {
+                hits.incrementAndGet();
+                return (T) value;
+            }
+        }
+
+        misses.incrementAndGet();
+        T value = query.run();
+        synchronized (cache) {
+            if (version == cacheVersion) {
+                cache.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private interface Query<T> {
+        T run() throws SQLException;
+    }
+
+
+    public enum AgingBucket {
+        CURRENT("Not yet due", Long.MIN_VALUE, 0),
+        DAYS_1_30("1-30 days", 1, 30),
+        DAYS_31_60("31-60 days", 31, 60),
+        DAYS_61_90("61-90 days", 61, 90),
+        OVER_90("90+ days", 91, Long.MAX_VALUE);
+
+        private final String displayName;
+        private final long minDays;
+        private final long maxDays;
+
+        AgingBucket(String displayName, long minDays, long maxDays) {
+            this.displayName = displayName;
+            this.minDays = minDays;
+            this.maxDays = maxDays;
+        }
+
+        // daysOverdue is zero on the due date and negative before it
+        public static AgingBucket forDaysOverdue(long daysOverdue) {
+            for (AgingBucket bucket : values()) {
+                if (daysOverdue >= bucket.minDays && daysOverdue <= bucket.maxDays) {
+                    return bucket;
+                }
+            }
+            return OVER_90;
+        }
+
+        public boolean isOverdue() {
+            return this != CURRENT;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+}
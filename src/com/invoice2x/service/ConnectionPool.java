@@ -0,0 +1,193 @@
+package com.invoice2x.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+ // Small SQLite pool: one serialized writer connection plus N read-only connections.
+ // With WAL the readers run alongside the writer without blocking each other.
+ 
+public class ConnectionPool {
+    
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+    
+    private final Connection writer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<Connection> readers = new ArrayList<>();
+    private final BlockingQueue<Connection> idleReaders;
+    // Shared by every cursor held open for a whole export, however many exports run at once,
+    // so short reads from the UI always find a reader
+    private final Semaphore cursorPermits;
+    // Lets nested reads on one thread share a connection instead of draining the pool
+    private final ThreadLocal<Lease> leases = new ThreadLocal<>();
+    // Only read after construction; each connection is used by one thread at a time
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+    
+    public ConnectionPool(String url, DatabaseProfile profile, int readerCount,
+                          int statementCacheSize) throws SQLException {
+        writer = DriverManager.getConnection(url);
+        profile.apply(writer, false);
+        statementCaches.put(writer, new StatementCache(writer, statementCacheSize));
+        
+        int count = Math.max(1, readerCount);
+        idleReaders = new ArrayBlockingQueue<>(count);
+        cursorPermits = new Semaphore(Math.max(1, count - 1), true);
+        for (int i = 0; i < count; i++) {
+            Connection reader = DriverManager.getConnection(url);
+            profile.apply(reader, true);
+            statementCaches.put(reader, new StatementCache(reader, statementCacheSize));
+            readers.add(reader);
+            idleReaders.add(reader);
+        }
+    }
+    
+    public Connection acquireWriter() throws SQLException {
+        try {
+            if (!writeLock.tryLock(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for the database writer");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database writer", e);
+        }
+        return writer;
+    }
+    
+    public void releaseWriter() {
+        writeLock.unlock();
+    }
+    
+    public Connection acquireReader() throws SQLException {
+        // Inside a write, read through the writer so uncommitted changes are visible
+        if (writeLock.isHeldByCurrentThread()) {
+            return writer;
+        }
+        
+        Lease lease = leases.get();
+        if (lease != null) {
+            lease.depth++;
+            return lease.connection;
+        }
+        
+        try {
+            Connection reader = idleReaders.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (reader == null) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+            leases.set(new Lease(reader));
+            return reader;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+    
+    public void releaseReader(Connection connection) {
+        if (connection == writer) {
+            return;
+        }
+        
+        Lease lease = leases.get();
+        if (lease != null && lease.connection == connection && --lease.depth == 0) {
+            leases.remove();
+            idleReaders.offer(connection);
+        }
+    }
+    
+    // For long-running cursors; waits, without a timeout, for another export to finish
+    public Connection acquireCursorReader() throws SQLException {
+        // Already holding a connection: nothing new is leased, so no permit is taken
+        if (writeLock.isHeldByCurrentThread() || leases.get() != null) {
+            return acquireReader();
+        }
+        
+        try {
+            cursorPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        try {
+            return acquireReader();
+        } catch (SQLException e) {
+            cursorPermits.release();
+            throw e;
+        }
+    }
+    
+    public void releaseCursorReader(Connection connection) {
+        Lease lease = leases.get();
+        boolean outermost = connection != writer && lease != null
+            && lease.connection == connection && lease.depth == 1;
+        releaseReader(connection);
+        if (outermost) {
+            cursorPermits.release();
+        }
+    }
+    
+    // Readers that long-running cursors may hold at the same time
+    public int getCursorReaderCount() {
+        return Math.max(1, readers.size() - 1);
+    }
+    
+    public int getReaderCount() {
+        return readers.size();
+    }
+    
+    public StatementCache statements(Connection connection) {
+        return statementCaches.get(connection);
+    }
+    
+    public long getStatementCacheHits() {
+        long total = 0;
+        for (StatementCache cache : statementCaches.values()) {
+            total += cache.getHits();
+        }
+        return total;
+    }
+    
+    public long getStatementCacheMisses() {
+        long total = 0;
+        for (StatementCache cache : statementCaches.values()) {
+            total += cache.getMisses();
+        }
+        return total;
+    }
+    
+    public void close() {
+        for (StatementCache cache : statementCaches.values()) {
+            cache.close();
+        }
+        
+        List<Connection> all = new ArrayList<>(readers);
+        all.add(writer);
+        for (Connection connection : all) {
+            try {
+                if (!connection.isClosed()) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private static class Lease {
+        private final Connection connection;
+        private int depth = 1;
+        
+        Lease(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
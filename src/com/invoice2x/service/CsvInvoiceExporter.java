@@ -0,0 +1,111 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceItem;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+ // CSV (RFC 4180) with one row per line item; the invoice columns repeat on each
+ // row. An invoice without items still gets one row with the item columns empty.
+ 
+public class CsvInvoiceExporter extends TextInvoiceExporter {
+    
+    private static final String[] HEADERS = {
+        "invoice_number", "invoice_date", "due_date", "status", "customer_name",
+        "customer_email", "customer_address", "subtotal", "tax", "total", "notes",
+        "line", "description", "quantity", "unit_price", "line_total"
+    };
+    
+    @Override
+    protected void writeHeader(Writer out) throws IOException {
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(HEADERS[i]);
+        }
+        out.write("\r\n");
+    }
+    
+    @Override
+    protected void writeInvoice(Writer out, Invoice invoice) throws IOException {
+        if (invoice.getItems().isEmpty()) {
+            writeInvoiceColumns(out, invoice);
+            out.write(",,,,,\r\n");
+            return;
+        }
+        
+        int line = 1;
+        for (InvoiceItem item : invoice.getItems()) {
+            writeInvoiceColumns(out, invoice);
+            out.write(',');
+            out.write(String.valueOf(line++));
+            out.write(',');
+            writeField(out, item.getDescription());
+            out.write(',');
+            writeAmount(out, item.getQuantity());
+            out.write(',');
+            writeAmount(out, item.getUnitPrice());
+            out.write(',');
+            writeAmount(out, item.getTotal());
+            out.write("\r\n");
+        }
+    }
+    
+    private void writeInvoiceColumns(Writer out, Invoice invoice) throws IOException {
+        writeField(out, invoice.getInvoiceNumber());
+        out.write(',');
+        writeDate(out, invoice.getInvoiceDate());
+        out.write(',');
+        writeDate(out, invoice.getDueDate());
+        out.write(',');
+        writeField(out, invoice.getStatus() != null ? invoice.getStatus().name() : null);
+        out.write(',');
+        writeField(out, invoice.getCustomerName());
+        out.write(',');
+        writeField(out, invoice.getCustomerEmail());
+        out.write(',');
+        writeField(out, invoice.getCustomerAddress());
+        out.write(',');
+        writeAmount(out, invoice.getSubtotal());
+        out.write(',');
+        writeAmount(out, invoice.getTax());
+        out.write(',');
+        writeAmount(out, invoice.getTotal());
+        out.write(',');
+        writeField(out, invoice.getNotes());
+    }
+    
+    private void writeField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+    
+    private void writeAmount(Writer out, BigDecimal value) throws IOException {
+        if (value != null) {
+            out.write(value.toPlainString());
+        }
+    }
+    
+    private void writeDate(Writer out, LocalDate value) throws IOException {
+        if (value != null) {
+            out.write(value.toString());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.invoice2x.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+ // Streaming RFC 4180 reader, the counterpart of CsvInvoiceExporter: quoted fields
+ // may hold commas, doubled quotes and line breaks; CRLF and LF both end a row.
+
+public class CsvRowReader implements ImportRowReader {
+
+    private final File file;
+
+    public CsvRowReader(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void read(RowHandler handler) throws Exception {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[64 * 1024];
+            List<String> cells = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean inQuotes = false;
+            // A quote inside a quoted field: either the first of a doubled pair or the closing quote
+            boolean quotePending = false;
+            boolean afterCr = false;
+            boolean first = true;
+            int rowNumber = 1;
+
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    // Spreadsheet programs often start UTF-8 CSV files with a byte order mark
+                    if (first) {
+                        first = false;
+                        if (c == '\uFEFF') {
+                            continue;
+                        }
+                    }
+                    if (quotePending) {
+                        quotePending = false;
+                        if (c == '"') {
+                            field.append('"');
+                            continue;
+                        }
+                        inQuotes = false;
+                    }
+                    if (inQuotes) {
+                        if (c == '"') {
+                            quotePending = true;
+                        } else {
+                            field.append(c);
+                        }
+                        continue;
+                    }
+                    if (afterCr) {
+                        afterCr = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+
+                    switch (c) {
+                        case '"':
+                            if (field.length() == 0) {
+                                inQuotes = true;
+                            } else {
+                                field.append(c);
+                            }
+                            break;
+                        case ',':
+                            cells.add(field.toString());
+                            field.setLength(0);
+                            break;
+                        case '\r':
+                        case '\n':
+                            afterCr = c == '\r';
+                            cells.add(field.toString());
+                            field.setLength(0);
+                            deliver(handler, rowNumber++, cells);
+                            cells = new ArrayList<>();
+                            break;
+                        default:
+                            field.append(c);
+                    }
+                }
+            }
+
+            if (inQuotes && !quotePending) {
+                throw new IOException("Unterminated quoted field in row " + rowNumber + " of " + file.getName());
+            }
+            if (field.length() > 0 || !cells.isEmpty()) {
+                cells.add(field.toString());
+                deliver(handler, rowNumber, cells);
+            }
+        }
+    }
+
+    private static void deliver(RowHandler handler, int rowNumber, List<String> cells) throws Exception {
+        if (cells.size() == 1 && cells.get(0).isEmpty()) {
+            return;
+        }
+        handler.row(rowNumber, cells);
+    }
+}
@@ -0,0 +1,136 @@
+package com.invoice2x.service;
+
+import com.invoice2x.util.ConfigManager;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+
+ // SQLite connection tuning (journal, sync, cache, mmap) applied when a connection is opened
+ 
+public class DatabaseProfile {
+    
+    public static final String DEFAULT = "default";
+    public static final String FAST_LOCAL = "fast-local";
+    
+    private static final List<String> JOURNAL_MODES =
+        Arrays.asList("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final List<String> SYNCHRONOUS_LEVELS =
+        Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final List<String> TEMP_STORES =
+        Arrays.asList("DEFAULT", "FILE", "MEMORY");
+    
+    private final String name;
+    private String journalMode;
+    private String synchronous;
+    private int cacheSize;
+    private long mmapSize;
+    private String tempStore;
+    private int busyTimeout;
+    
+    private DatabaseProfile(String name) {
+        this.name = name;
+    }
+    
+    
+     // Named presets. "default" matches the driver defaults; "fast-local" suits a single-user desktop
+     
+    public static DatabaseProfile preset(String name) {
+        DatabaseProfile profile = new DatabaseProfile(name);
+        if (FAST_LOCAL.equals(name)) {
+            profile.journalMode = "WAL";
+            profile.synchronous = "NORMAL";
+            profile.cacheSize = -16000;       // negative = KiB, so ~16 MB
+            profile.mmapSize = 268435456L;    // 256 MB
+            profile.tempStore = "MEMORY";
+            profile.busyTimeout = 5000;
+        } else {
+            profile.journalMode = "DELETE";
+            profile.synchronous = "FULL";
+            profile.cacheSize = -2000;
+            profile.mmapSize = 0;
+            profile.tempStore = "DEFAULT";
+            profile.busyTimeout = 3000;
+        }
+        return profile;
+    }
+    
+    
+     // Starts from the db.profile preset, then applies any individual db.* overrides
+     
+    public static DatabaseProfile fromConfig(ConfigManager config) {
+        DatabaseProfile profile = preset(config.getProperty("db.profile", FAST_LOCAL));
+        profile.journalMode = choice(config.getProperty("db.journal_mode", profile.journalMode), 
+                                     JOURNAL_MODES, profile.journalMode);
+        profile.synchronous = choice(config.getProperty("db.synchronous", profile.synchronous), 
+                                     SYNCHRONOUS_LEVELS, profile.synchronous);
+        profile.cacheSize = config.getIntProperty("db.cache_size", profile.cacheSize);
+        profile.mmapSize = config.getLongProperty("db.mmap_size", profile.mmapSize);
+        profile.tempStore = choice(config.getProperty("db.temp_store", profile.tempStore), 
+                                   TEMP_STORES, profile.tempStore);
+        profile.busyTimeout = config.getIntProperty("db.busy_timeout", profile.busyTimeout);
+        return profile;
+    }
+    
+    private static String choice(String value, List<String> allowed, String fallback) {
+        String upper = value.trim().toUpperCase();
+        if (allowed.contains(upper)) {
+            return upper;
+        }
+        System.err.println("Ignoring unsupported database setting: " + value);
+        return fallback;
+    }
+    
+    public void apply(Connection connection, boolean readOnly) throws SQLException {
+        Statement stmt = connection.createStatement();
+        stmt.execute("PRAGMA busy_timeout = " + busyTimeout);
+        if (readOnly) {
+            // journal_mode is persistent and already set by the writer
+            stmt.execute("PRAGMA query_only = 1");
+        } else {
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+        }
+        stmt.execute("PRAGMA cache_size = " + cacheSize);
+        stmt.execute("PRAGMA mmap_size = " + mmapSize);
+        stmt.execute("PRAGMA temp_store = " + tempStore);
+        stmt.close();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public String getJournalMode() {
+        return journalMode;
+    }
+    
+    public String getSynchronous() {
+        return synchronous;
+    }
+    
+    public int getCacheSize() {
+        return cacheSize;
+    }
+    
+    public long getMmapSize() {
+        return mmapSize;
+    }
+    
+    public String getTempStore() {
+        return tempStore;
+    }
+    
+    public int getBusyTimeout() {
+        return busyTimeout;
+    }
+    
+    @Override
+    public String toString() {
+        return name + " (journal=" + journalMode + ", synchronous=" + synchronous + 
+               ", cache=" + cacheSize + ", mmap=" + mmapSize + ", temp=" + tempStore + 
+               ", busy_timeout=" + busyTimeout + ")";
+    }
+}
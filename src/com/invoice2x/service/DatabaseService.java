@@ -2,33 +2,140 @@ package com.invoice2x.service;
 
 import com.invoice2x.model.Invoice;
 import com.invoice2x.model.InvoiceItem;
+import com.invoice2x.model.InvoiceSummary;
+import com.invoice2x.util.ConfigManager;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 public class DatabaseService {
-    
+
     private static DatabaseService instance;
-    private Connection connection;
+    private ConnectionPool pool;
+    private InvoiceCache invoiceCache = new InvoiceCache(0, 0);
+    // Invoices inserted, changed or deleted by the open transaction; evicted from the
+    // cache when it ends. Only touched while holding the writer.
+    private final List<Integer> pendingInvalidations = new ArrayList<>();
+    // Bumped after every transaction that touched invoices; results derived from them are stale after a bump
+    private final AtomicLong dataVersion = new AtomicLong();
     private static final String DB_URL = "jdbc:sqlite:invoice2x.db";
-    
+    // Stays well below SQLite's default limit of 999 bound parameters
+    private static final int IN_CHUNK_SIZE = 500;
+
+    // Schema migrations in order: entry i upgrades user_version i to i + 1.
+    // Append new entries only; never edit one that has shipped.
+    private static final String[][] MIGRATIONS = {
+        // 1: secondary indexes for item fetches, date ranges, status filters and list sorts
+        {
+            "CREATE INDEX IF NOT EXISTS idx_invoice_items_invoice ON invoice_items(invoice_id, id)",
+            "CREATE INDEX IF NOT EXISTS idx_invoices_date ON invoices(invoice_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_invoices_status ON invoices(status, invoice_date, id)",
+            "CREATE INDEX IF NOT EXISTS idx_invoices_customer ON invoices(customer_name COLLATE NOCASE, id)",
+            "CREATE INDEX IF NOT EXISTS idx_invoices_total ON invoices(total, id)"
+        },
+        // 2: change_seq, bumped on every insert and update, drives incremental exports
+        {
+            "ALTER TABLE invoices ADD COLUMN change_seq INTEGER NOT NULL DEFAULT 0",
+            "UPDATE invoices SET change_seq = id",
+            "CREATE INDEX IF NOT EXISTS idx_invoices_change_seq ON invoices(change_seq)"
+        },
+        // 3: invoice count and total per (year, month, status), kept current by every write
+        {
+            "CREATE TABLE IF NOT EXISTS invoice_aggregates (" +
+                "year INTEGER NOT NULL," +
+                "month INTEGER NOT NULL," +
+                "status VARCHAR(20) NOT NULL," +
+                "invoice_count INTEGER NOT NULL," +
+                "total_cents INTEGER NOT NULL," +
+                "PRIMARY KEY (year, month, status)" +
+                ") WITHOUT ROWID",
+            // Dates are stored as epoch millis at local midnight
+            "INSERT INTO invoice_aggregates (year, month, status, invoice_count, total_cents) " +
+                "SELECT CAST(strftime('%Y', invoice_date / 1000, 'unixepoch', 'localtime') AS INTEGER), " +
+                "CAST(strftime('%m', invoice_date / 1000, 'unixepoch', 'localtime') AS INTEGER), " +
+                "status, COUNT(*), SUM(CAST(ROUND(total * 100) AS INTEGER)) " +
+                "FROM invoices GROUP BY 1, 2, 3"
+        },
+        // 4: covering indexes for the per-customer revenue and aging queries
+        {
+            "CREATE INDEX IF NOT EXISTS idx_invoices_customer_totals ON invoices(customer_name COLLATE NOCASE, status, total)",
+            "CREATE INDEX IF NOT EXISTS idx_invoices_due_totals ON invoices(status, due_date, total)"
+        },
+        // 5: per-year invoice number counters, seeded past the highest INV-<year>-<n> in use.
+        // Suffixes of eight or more digits that start with the year were produced by an old
+        // generator that glued the year onto the counter; the series does not continue from them.
+        {
+            "CREATE TABLE IF NOT EXISTS invoice_sequences (" +
+                "year INTEGER PRIMARY KEY," +
+                "next_value INTEGER NOT NULL" +
+                ")",
+            "INSERT INTO invoice_sequences (year, next_value) " +
+                "SELECT CAST(substr(invoice_number, 5, 4) AS INTEGER), MAX(CAST(substr(invoice_number, 10) AS INTEGER)) + 1 " +
+                "FROM invoices WHERE invoice_number GLOB 'INV-[0-9][0-9][0-9][0-9]-[0-9]*' " +
+                "AND substr(invoice_number, 10) NOT GLOB '*[^0-9]*' " +
+                "AND NOT (length(invoice_number) >= 17 AND substr(invoice_number, 10, 4) = substr(invoice_number, 5, 4)) " +
+                "GROUP BY 1"
+        },
+        // 6: change_seq counter. Values are never reused, even when the invoice holding the
+        // highest one is deleted, so an incremental export's high-water mark stays valid.
+        {
+            "CREATE TABLE IF NOT EXISTS change_sequence (" +
+                "id INTEGER PRIMARY KEY CHECK (id = 1)," +
+                "last_value INTEGER NOT NULL" +
+                ")",
+            "INSERT OR IGNORE INTO change_sequence (id, last_value) " +
+                "SELECT 1, COALESCE(MAX(change_seq), 0) FROM invoices"
+        }
+    };
+
+    // INV-<year>-<n>, the numbers the invoice_sequences counters hand out
+    private static final Pattern SERIES_NUMBER = Pattern.compile("INV-(\\d{4})-(\\d{1,15})");
+
+    private static final String SUMMARY_COLUMNS =
+        "id, invoice_number, customer_name, invoice_date, total, status";
+
+    // Adds a signed count and total to one aggregate row, creating it on first use
+    private static final String ADJUST_AGGREGATE =
+        "INSERT INTO invoice_aggregates (year, month, status, invoice_count, total_cents) VALUES (?, ?, ?, ?, ?) " +
+        "ON CONFLICT (year, month, status) DO UPDATE SET " +
+        "invoice_count = invoice_count + excluded.invoice_count, total_cents = total_cents + excluded.total_cents";
+
     private DatabaseService() {
     }
-    
+
     public static synchronized DatabaseService getInstance() {
         if (instance == null) {
             instance = new DatabaseService();
         }
         return instance;
     }
-    
+
     public boolean initializeDatabase() {
         try {
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(DB_URL);
+
+            ConfigManager config = ConfigManager.getInstance();
+            DatabaseProfile profile = DatabaseProfile.fromConfig(config);
+            int readers = config.getIntProperty("db.pool.readers", 3);
+            int cacheSize = config.getIntProperty("db.statement_cache.size", 32);
+            pool = new ConnectionPool(DB_URL, profile, readers, cacheSize);
+            invoiceCache = new InvoiceCache(config.getIntProperty("db.invoice_cache.entries", 500),
+                                            config.getLongProperty("db.invoice_cache.max_kb", 4096) * 1024);
+
             createTables();
             return true;
         } catch (Exception e) {
@@ -36,90 +143,128 @@ public class DatabaseService {
             return false;
         }
     }
-    
+
     private void createTables() throws SQLException {
+        withWriter(connection -> {
+            Statement stmt = connection.createStatement();
+
+            String invoicesTable = "CREATE TABLE IF NOT EXISTS invoices (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "invoice_number VARCHAR(50) UNIQUE NOT NULL," +
+                "customer_name VARCHAR(200) NOT NULL," +
+                "customer_email VARCHAR(200)," +
+                "customer_address TEXT," +
+                "invoice_date DATE NOT NULL," +
+                "due_date DATE NOT NULL," +
+                "status VARCHAR(20) NOT NULL," +
+                "subtotal DECIMAL(10,2) NOT NULL," +
+                "tax DECIMAL(10,2) NOT NULL," +
+                "total DECIMAL(10,2) NOT NULL," +
+                "notes TEXT," +
+                "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")";
+            stmt.execute(invoicesTable);
+
+            String itemsTable = "CREATE TABLE IF NOT EXISTS invoice_items (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "invoice_id INTEGER NOT NULL," +
+                "description VARCHAR(500) NOT NULL," +
+                "quantity DECIMAL(10,2) NOT NULL," +
+                "unit_price DECIMAL(10,2) NOT NULL," +
+                "total DECIMAL(10,2) NOT NULL," +
+                "FOREIGN KEY (invoice_id) REFERENCES invoices(id) ON DELETE CASCADE" +
+                ")";
+            stmt.execute(itemsTable);
+
+            String settingsTable = "CREATE TABLE IF NOT EXISTS settings (" +
+                "key VARCHAR(100) PRIMARY KEY," +
+                "value TEXT" +
+                ")";
+            stmt.execute(settingsTable);
+
+            stmt.close();
+
+            migrateSchema(connection);
+            return null;
+        });
+    }
+
+    // Brings the schema up to MIGRATIONS.length, tracked in PRAGMA user_version
+    private void migrateSchema(Connection connection) throws SQLException {
         Statement stmt = connection.createStatement();
-        
-        String invoicesTable = "CREATE TABLE IF NOT EXISTS invoices (" +
-            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-            "invoice_number VARCHAR(50) UNIQUE NOT NULL," +
-            "customer_name VARCHAR(200) NOT NULL," +
-            "customer_email VARCHAR(200)," +
-            "customer_address TEXT," +
-            "invoice_date DATE NOT NULL," +
-            "due_date DATE NOT NULL," +
-            "status VARCHAR(20) NOT NULL," +
-            "subtotal DECIMAL(10,2) NOT NULL," +
-            "tax DECIMAL(10,2) NOT NULL," +
-            "total DECIMAL(10,2) NOT NULL," +
-            "notes TEXT," +
-            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-            ")";
-        stmt.execute(invoicesTable);
-        
-        String itemsTable = "CREATE TABLE IF NOT EXISTS invoice_items (" +
-            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-            "invoice_id INTEGER NOT NULL," +
-            "description VARCHAR(500) NOT NULL," +
-            "quantity DECIMAL(10,2) NOT NULL," +
-            "unit_price DECIMAL(10,2) NOT NULL," +
-            "total DECIMAL(10,2) NOT NULL," +
-            "FOREIGN KEY (invoice_id) REFERENCES invoices(id) ON DELETE CASCADE" +
-            ")";
-        stmt.execute(itemsTable);
-        
-        String settingsTable = "CREATE TABLE IF NOT EXISTS settings (" +
-            "key VARCHAR(100) PRIMARY KEY," +
-            "value TEXT" +
-            ")";
-        stmt.execute(settingsTable);
-        
+        ResultSet rs = stmt.executeQuery("PRAGMA user_version");
+        int version = rs.next() ? rs.getInt(1) : 0;
+        rs.close();
         stmt.close();
+
+        for (int v = version; v < MIGRATIONS.length; v++) {
+            String[] steps = MIGRATIONS[v];
+            int target = v + 1;
+            write(conn -> {
+                Statement migrationStmt = conn.createStatement();
+                for (String sql : steps) {
+                    migrationStmt.execute(sql);
+                }
+                migrationStmt.execute("PRAGMA user_version = " + target);
+                migrationStmt.close();
+                return null;
+            });
+        }
     }
-    
+
     public int saveInvoice(Invoice invoice) throws SQLException {
-        if (invoice.getId() == 0) {
-            return insertInvoice(invoice);
-        } else {
-            updateInvoice(invoice);
-            return invoice.getId();
+        int originalId = invoice.getId();
+        try {
+            // Header and all items are written in one transaction (one commit)
+            return write(connection -> {
+                if (invoice.getId() == 0) {
+                    return insertInvoice(connection, invoice);
+                } else {
+                    updateInvoice(connection, invoice);
+                    return invoice.getId();
+                }
+            });
+        } catch (SQLException | RuntimeException e) {
+            // The insert was rolled back, so the id it assigned is no longer valid
+            invoice.setId(originalId);
+            throw e;
         }
     }
-    
-    private int insertInvoice(Invoice invoice) throws SQLException {
-        // Ensure invoice number is present and unique before inserting
-        if (invoice.getInvoiceNumber() == null || invoice.getInvoiceNumber().trim().isEmpty()) {
-            invoice.setInvoiceNumber(generateInvoiceNumber());
-        } else {
-            String checkSql = "SELECT id FROM invoices WHERE invoice_number=?";
-            PreparedStatement checkStmt = connection.prepareStatement(checkSql);
-            checkStmt.setString(1, invoice.getInvoiceNumber());
-            ResultSet rsCheck = checkStmt.executeQuery();
-            boolean exists = rsCheck.next();
-            rsCheck.close();
-            checkStmt.close();
-
-            if (exists) {
-                // If the provided invoice number already exists, generate a new unique one
-                String newNum;
-                do {
-                    newNum = generateInvoiceNumber();
-                    PreparedStatement tmp = connection.prepareStatement(checkSql);
-                    tmp.setString(1, newNum);
-                    ResultSet r = tmp.executeQuery();
-                    exists = r.next();
-                    r.close();
-                    tmp.close();
-                } while (exists);
-                invoice.setInvoiceNumber(newNum);
+
+    // Inserts new invoices in one transaction (one commit), e.g. a batch of an import.
+    // If any insert fails none are kept.
+    public int insertInvoices(List<Invoice> invoices) throws SQLException {
+        try {
+            return write(connection -> {
+                for (Invoice invoice : invoices) {
+                    insertInvoice(connection, invoice);
+                }
+                return invoices.size();
+            });
+        } catch (SQLException | RuntimeException e) {
+            // Rolled back, so none of the assigned ids are valid
+            for (Invoice invoice : invoices) {
+                invoice.setId(0);
             }
+            throw e;
+        }
+    }
+
+    private int insertInvoice(Connection connection, Invoice invoice) throws SQLException {
+        String number = invoice.getInvoiceNumber();
+        if (number == null || number.trim().isEmpty() || invoiceNumberExists(connection, number)) {
+            // A taken number (typically a preview another save used first) is replaced, not retried
+            int year = LocalDate.now().getYear();
+            invoice.setInvoiceNumber(InvoiceNumberBlock.format(year, allocateInvoiceNumbers(connection, year, 1)));
+        } else {
+            advanceInvoiceSequence(connection, number);
         }
 
         String sql = "INSERT INTO invoices (invoice_number, customer_name, customer_email, " +
-            "customer_address, invoice_date, due_date, status, subtotal, tax, total, notes) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        
-        PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            "customer_address, invoice_date, due_date, status, subtotal, tax, total, notes, change_seq) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        PreparedStatement pstmt = pool.statements(connection).prepare(sql, Statement.RETURN_GENERATED_KEYS);
         pstmt.setString(1, invoice.getInvoiceNumber());
         pstmt.setString(2, invoice.getCustomerName());
         pstmt.setString(3, invoice.getCustomerEmail());
@@ -131,7 +276,8 @@ public class DatabaseService {
         pstmt.setBigDecimal(9, invoice.getTax());
         pstmt.setBigDecimal(10, invoice.getTotal());
         pstmt.setString(11, invoice.getNotes());
-        
+        pstmt.setLong(12, nextChangeSeq(connection));
+
         pstmt.executeUpdate();
 
         int invoiceId = 0;
@@ -153,21 +299,25 @@ public class DatabaseService {
             rs2.close();
             lastIdStmt.close();
         }
-        
-        for (InvoiceItem item : invoice.getItems()) {
-            saveInvoiceItem(invoiceId, item);
-        }
-        
-        pstmt.close();
+
+        insertInvoiceItems(connection, invoiceId, invoice.getItems());
+        addToAggregates(connection, invoice);
+        pendingInvalidations.add(invoiceId);
+
         return invoiceId;
     }
-    
-    private void updateInvoice(Invoice invoice) throws SQLException {
+
+    private void updateInvoice(Connection connection, Invoice invoice) throws SQLException {
         String sql = "UPDATE invoices SET invoice_number=?, customer_name=?, customer_email=?, " +
             "customer_address=?, invoice_date=?, due_date=?, status=?, subtotal=?, tax=?, " +
-            "total=?, notes=? WHERE id=?";
-        
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+            "total=?, notes=?, change_seq=? WHERE id=?";
+
+        // The stored row leaves its aggregate before the new values are added
+        removeFromAggregates(connection, java.util.Collections.singletonList(invoice.getId()));
+        // A number edited into the series moves the counter past it, as on insert
+        advanceInvoiceSequence(connection, invoice.getInvoiceNumber());
+
+        PreparedStatement pstmt = prepareCached(connection, sql);
         pstmt.setString(1, invoice.getInvoiceNumber());
         pstmt.setString(2, invoice.getCustomerName());
         pstmt.setString(3, invoice.getCustomerEmail());
@@ -179,138 +329,710 @@ public class DatabaseService {
         pstmt.setBigDecimal(9, invoice.getTax());
         pstmt.setBigDecimal(10, invoice.getTotal());
         pstmt.setString(11, invoice.getNotes());
-        pstmt.setInt(12, invoice.getId());
-        
+        pstmt.setLong(12, nextChangeSeq(connection));
+        pstmt.setInt(13, invoice.getId());
+
+        if (pstmt.executeUpdate() > 0) {
+            addToAggregates(connection, invoice);
+        }
+        pendingInvalidations.add(invoice.getId());
+
+        syncInvoiceItems(connection, invoice);
+    }
+
+    // Diffs the items against the stored rows by position and only writes what changed
+    private void syncInvoiceItems(Connection connection, Invoice invoice) throws SQLException {
+        List<InvoiceItem> existing = getInvoiceItems(connection, invoice.getId());
+        List<InvoiceItem> items = invoice.getItems();
+        int common = Math.min(existing.size(), items.size());
+
+        String sql = "UPDATE invoice_items SET description=?, quantity=?, unit_price=?, total=? WHERE id=?";
+        PreparedStatement pstmt = prepareCached(connection, sql);
+        int changed = 0;
+
+        for (int i = 0; i < common; i++) {
+            InvoiceItem stored = existing.get(i);
+            InvoiceItem item = items.get(i);
+            item.setId(stored.getId());
+            item.setInvoiceId(invoice.getId());
+
+            if (!sameContent(stored, item)) {
+                pstmt.setString(1, item.getDescription());
+                pstmt.setBigDecimal(2, item.getQuantity());
+                pstmt.setBigDecimal(3, item.getUnitPrice());
+                pstmt.setBigDecimal(4, item.getTotal());
+                pstmt.setInt(5, item.getId());
+                pstmt.addBatch();
+                changed++;
+            }
+        }
+
+        if (changed > 0) {
+            pstmt.executeBatch();
+        }
+
+        if (existing.size() > common) {
+            List<Integer> removed = new ArrayList<>();
+            for (InvoiceItem stored : existing.subList(common, existing.size())) {
+                removed.add(stored.getId());
+            }
+            for (int from = 0; from < removed.size(); from += IN_CHUNK_SIZE) {
+                List<Integer> chunk = removed.subList(from, Math.min(from + IN_CHUNK_SIZE, removed.size()));
+                PreparedStatement deleteStmt = connection.prepareStatement(
+                    "DELETE FROM invoice_items WHERE id IN (" + placeholders(chunk.size()) + ")");
+                bindIds(deleteStmt, chunk);
+                deleteStmt.executeUpdate();
+                deleteStmt.close();
+            }
+        }
+
+        if (items.size() > common) {
+            insertInvoiceItems(connection, invoice.getId(), items.subList(common, items.size()));
+        }
+    }
+
+    private void addToAggregates(Connection connection, Invoice invoice) throws SQLException {
+        PreparedStatement pstmt = prepareCached(connection, ADJUST_AGGREGATE);
+        bindAggregate(pstmt, invoice.getInvoiceDate(), invoice.getStatus().name(), invoice.getTotal(), 1);
         pstmt.executeUpdate();
-        
-        deleteInvoiceItems(invoice.getId());
-        for (InvoiceItem item : invoice.getItems()) {
-            saveInvoiceItem(invoice.getId(), item);
+    }
+
+    // Takes the stored rows out of their aggregates; call before they are changed or deleted
+    private void removeFromAggregates(Connection connection, List<Integer> ids) throws SQLException {
+        PreparedStatement select = connection.prepareStatement(
+            "SELECT invoice_date, status, total FROM invoices WHERE id IN (" + placeholders(ids.size()) + ")");
+        bindIds(select, ids);
+        ResultSet rs = select.executeQuery();
+
+        PreparedStatement pstmt = prepareCached(connection, ADJUST_AGGREGATE);
+        int removed = 0;
+        while (rs.next()) {
+            bindAggregate(pstmt, rs.getDate("invoice_date").toLocalDate(), rs.getString("status"),
+                          rs.getBigDecimal("total"), -1);
+            pstmt.addBatch();
+            removed++;
+        }
+        rs.close();
+        select.close();
+
+        if (removed > 0) {
+            pstmt.executeBatch();
+            Statement stmt = connection.createStatement();
+            stmt.executeUpdate("DELETE FROM invoice_aggregates WHERE invoice_count = 0");
+            stmt.close();
         }
-        
-        pstmt.close();
     }
-    
-    private void saveInvoiceItem(int invoiceId, InvoiceItem item) throws SQLException {
+
+    private static void bindAggregate(PreparedStatement pstmt, LocalDate date, String status,
+                                      BigDecimal total, int sign) throws SQLException {
+        pstmt.setInt(1, date.getYear());
+        pstmt.setInt(2, date.getMonthValue());
+        pstmt.setString(3, status);
+        pstmt.setInt(4, sign);
+        pstmt.setLong(5, sign * total.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue());
+    }
+
+    private static boolean sameContent(InvoiceItem a, InvoiceItem b) {
+        return java.util.Objects.equals(a.getDescription(), b.getDescription()) &&
+               sameAmount(a.getQuantity(), b.getQuantity()) &&
+               sameAmount(a.getUnitPrice(), b.getUnitPrice()) &&
+               sameAmount(a.getTotal(), b.getTotal());
+    }
+
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.compareTo(b) == 0;
+    }
+
+    private void insertInvoiceItems(Connection connection, int invoiceId,
+                                    List<InvoiceItem> items) throws SQLException {
+        if (items.isEmpty()) {
+            return;
+        }
+
         String sql = "INSERT INTO invoice_items (invoice_id, description, quantity, " +
             "unit_price, total) VALUES (?, ?, ?, ?, ?)";
-        
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setInt(1, invoiceId);
-        pstmt.setString(2, item.getDescription());
-        pstmt.setBigDecimal(3, item.getQuantity());
-        pstmt.setBigDecimal(4, item.getUnitPrice());
-        pstmt.setBigDecimal(5, item.getTotal());
-        
-        pstmt.executeUpdate();
-        pstmt.close();
-    }
-    
-    private void deleteInvoiceItems(int invoiceId) throws SQLException {
-        String sql = "DELETE FROM invoice_items WHERE invoice_id=?";
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setInt(1, invoiceId);
-        pstmt.executeUpdate();
-        pstmt.close();
+
+        PreparedStatement pstmt = prepareCached(connection, sql);
+        for (InvoiceItem item : items) {
+            item.setInvoiceId(invoiceId);
+            pstmt.setInt(1, invoiceId);
+            pstmt.setString(2, item.getDescription());
+            pstmt.setBigDecimal(3, item.getQuantity());
+            pstmt.setBigDecimal(4, item.getUnitPrice());
+            pstmt.setBigDecimal(5, item.getTotal());
+            pstmt.addBatch();
+        }
+
+        pstmt.executeBatch();
     }
-    
+
+    // Served from the invoice cache when possible; the caller gets its own copy either way
     public Invoice getInvoiceById(int id) throws SQLException {
-        String sql = "SELECT * FROM invoices WHERE id=?";
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setInt(1, id);
-        
-        ResultSet rs = pstmt.executeQuery();
-        Invoice invoice = null;
-        
-        if (rs.next()) {
-            invoice = mapResultSetToInvoice(rs);
-            // CRITICAL: Always load items
-            invoice.setItems(getInvoiceItems(id));
-        }
-        
-        pstmt.close();
+        Invoice cached = invoiceCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long version = invoiceCache.getVersion();
+        Invoice invoice = read(connection -> {
+            String sql = "SELECT * FROM invoices WHERE id=?";
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            pstmt.setInt(1, id);
+
+            ResultSet rs = pstmt.executeQuery();
+            Invoice loaded = null;
+
+            if (rs.next()) {
+                loaded = mapResultSetToInvoice(rs);
+                // CRITICAL: Always load items
+                loaded.setItems(getInvoiceItems(connection, id));
+            }
+
+            rs.close();
+            return loaded;
+        });
+        if (invoice != null) {
+            invoiceCache.put(invoice, version);
+        }
         return invoice;
     }
+
     public Invoice getInvoiceByNumber(String invoiceNumber) throws SQLException {
-    String sql = "SELECT * FROM invoices WHERE invoice_number=?";
-    PreparedStatement pstmt = connection.prepareStatement(sql);
-    pstmt.setString(1, invoiceNumber);
-    
-    ResultSet rs = pstmt.executeQuery();
-    Invoice invoice = null;
-    
-    if (rs.next()) {
-        invoice = mapResultSetToInvoice(rs);
-        // CRITICAL: Always load items
-        int invoiceId = rs.getInt("id");
-        invoice.setItems(getInvoiceItems(invoiceId));
-        
-        System.out.println("DEBUG: Loaded invoice by number " + invoiceNumber + 
-                         " with " + invoice.getItems().size() + " items");
-    }
-    
-    rs.close();
-    pstmt.close();
-    return invoice;
-}
-    
-    
-    public List<Invoice> getAllInvoices() throws SQLException {
-        List<Invoice> invoices = new ArrayList<>();
-        String sql = "SELECT * FROM invoices ORDER BY invoice_date DESC";
-        
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery(sql);
-        
-        while (rs.next()) {
-            Invoice invoice = mapResultSetToInvoice(rs);
-            
-            // CRITICAL FIX: Load items for EACH invoice
-            int invoiceId = rs.getInt("id");
-            List<InvoiceItem> items = getInvoiceItems(invoiceId);
-            invoice.setItems(items);
-            
-            System.out.println("DEBUG: Loaded invoice " + invoice.getInvoiceNumber() + 
-                             " with " + items.size() + " items");
-            
-            invoices.add(invoice);
-        }
-        
-        stmt.close();
-        
-        System.out.println("DEBUG: Total invoices loaded: " + invoices.size());
-        
-        return invoices;
-    }
-    
-    
-    private List<InvoiceItem> getInvoiceItems(int invoiceId) throws SQLException {
+        Invoice cached = invoiceCache.get(invoiceNumber);
+        if (cached != null) {
+            return cached;
+        }
+        long version = invoiceCache.getVersion();
+        Invoice invoice = read(connection -> {
+            String sql = "SELECT * FROM invoices WHERE invoice_number=?";
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            pstmt.setString(1, invoiceNumber);
+
+            ResultSet rs = pstmt.executeQuery();
+            Invoice loaded = null;
+
+            if (rs.next()) {
+                loaded = mapResultSetToInvoice(rs);
+                // CRITICAL: Always load items
+                int invoiceId = rs.getInt("id");
+                loaded.setItems(getInvoiceItems(connection, invoiceId));
+            }
+
+            rs.close();
+            return loaded;
+        });
+        if (invoice != null) {
+            invoiceCache.put(invoice, version);
+        }
+        return invoice;
+    }
+
+    // Read from invoice_aggregates, which stays a few rows per month however many invoices there are
+    public int countInvoices() throws SQLException {
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection,
+                "SELECT COALESCE(SUM(invoice_count), 0) FROM invoice_aggregates");
+            ResultSet rs = pstmt.executeQuery();
+            int count = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            return count;
+        });
+    }
+
+    // Sum of invoice totals from invoice_aggregates; a null month or status matches all
+    public BigDecimal sumInvoiceTotals(YearMonth month, Invoice.InvoiceStatus status) throws SQLException {
+        String sql = "SELECT COALESCE(SUM(total_cents), 0) FROM invoice_aggregates" +
+            " WHERE (? IS NULL OR (year = ? AND month = ?)) AND (? IS NULL OR status = ?)";
+
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            Integer year = month != null ? month.getYear() : null;
+            pstmt.setObject(1, year);
+            pstmt.setObject(2, year);
+            pstmt.setObject(3, month != null ? month.getMonthValue() : null);
+            String statusName = status != null ? status.name() : null;
+            pstmt.setString(4, statusName);
+            pstmt.setString(5, statusName);
+            ResultSet rs = pstmt.executeQuery();
+            long cents = rs.next() ? rs.getLong(1) : 0;
+            rs.close();
+            return BigDecimal.valueOf(cents, 2);
+        });
+    }
+
+    public int countInvoices(ExportCriteria criteria) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM invoices i" + criteriaWhere(criteria, params);
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            int count = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            pstmt.close();
+            return count;
+        });
+    }
+
+    // Highest change_seq handed out so far; every insert or update of an invoice goes above it
+    public long getMaxChangeSeq() throws SQLException {
+        return read(connection -> {
+            Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT last_value FROM change_sequence WHERE id = 1");
+            long max = rs.next() ? rs.getLong(1) : 0;
+            rs.close();
+            stmt.close();
+            return max;
+        });
+    }
+
+    // Invoice counts per day, newest first
+    public Map<LocalDate, Integer> countInvoicesByDate(ExportCriteria criteria) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT i.invoice_date, COUNT(*) FROM invoices i" + criteriaWhere(criteria, params) +
+            " GROUP BY i.invoice_date ORDER BY i.invoice_date DESC";
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            Map<LocalDate, Integer> counts = new LinkedHashMap<>();
+            while (rs.next()) {
+                counts.merge(rs.getDate(1).toLocalDate(), rs.getInt(2), Integer::sum);
+            }
+            rs.close();
+            pstmt.close();
+            return counts;
+        });
+    }
+
+    // Invoice counts per customer, ignoring case in names, ordered by name
+    public Map<String, Integer> countInvoicesByCustomer(ExportCriteria criteria) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT i.customer_name, COUNT(*) FROM invoices i" + criteriaWhere(criteria, params) +
+            " GROUP BY i.customer_name COLLATE NOCASE ORDER BY i.customer_name COLLATE NOCASE";
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getInt(2));
+            }
+            rs.close();
+            pstmt.close();
+            return counts;
+        });
+    }
+
+    // Invoice totals per month from invoice_aggregates, oldest first; months without invoices are absent
+    public Map<YearMonth, InvoiceTotals> sumInvoiceTotalsByMonth(YearMonth from, YearMonth to,
+                                                                 Collection<Invoice.InvoiceStatus> statuses) throws SQLException {
+        String sql = "SELECT year, month, SUM(invoice_count), SUM(total_cents) FROM invoice_aggregates" +
+            " WHERE year * 12 + month BETWEEN ? AND ? AND status IN (" + placeholders(statuses.size()) + ")" +
+            " GROUP BY year, month ORDER BY year, month";
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            pstmt.setInt(1, from.getYear() * 12 + from.getMonthValue());
+            pstmt.setInt(2, to.getYear() * 12 + to.getMonthValue());
+            bindStatuses(pstmt, 3, statuses);
+            ResultSet rs = pstmt.executeQuery();
+            Map<YearMonth, InvoiceTotals> totals = new LinkedHashMap<>();
+            while (rs.next()) {
+                totals.put(YearMonth.of(rs.getInt(1), rs.getInt(2)), InvoiceTotals.ofCents(rs.getInt(3), rs.getLong(4)));
+            }
+            rs.close();
+            pstmt.close();
+            return totals;
+        });
+    }
+
+    // The customers with the highest invoice totals, highest first. Pinned to the covering index:
+    // left to itself the planner searches idx_invoices_due_totals by status and then reads every row.
+    public Map<String, InvoiceTotals> sumInvoiceTotalsByCustomer(Collection<Invoice.InvoiceStatus> statuses,
+                                                                 int limit) throws SQLException {
+        String sql = "SELECT customer_name, COUNT(*), SUM(CAST(ROUND(total * 100) AS INTEGER)) AS cents" +
+            " FROM invoices INDEXED BY idx_invoices_customer_totals" +
+            " WHERE status IN (" + placeholders(statuses.size()) + ")" +
+            " GROUP BY customer_name COLLATE NOCASE ORDER BY cents DESC LIMIT ?";
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            int index = bindStatuses(pstmt, 1, statuses);
+            pstmt.setInt(index, limit);
+            ResultSet rs = pstmt.executeQuery();
+            Map<String, InvoiceTotals> totals = new LinkedHashMap<>();
+            while (rs.next()) {
+                totals.put(rs.getString(1), InvoiceTotals.ofCents(rs.getInt(2), rs.getLong(3)));
+            }
+            rs.close();
+            pstmt.close();
+            return totals;
+        });
+    }
+
+    // Invoice totals per due date, oldest first; scans idx_invoices_due_totals only
+    public Map<LocalDate, InvoiceTotals> sumInvoiceTotalsByDueDate(Collection<Invoice.InvoiceStatus> statuses) throws SQLException {
+        String sql = "SELECT due_date, COUNT(*), SUM(CAST(ROUND(total * 100) AS INTEGER)) FROM invoices" +
+            " WHERE status IN (" + placeholders(statuses.size()) + ")" +
+            " GROUP BY due_date ORDER BY due_date";
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            bindStatuses(pstmt, 1, statuses);
+            ResultSet rs = pstmt.executeQuery();
+            Map<LocalDate, InvoiceTotals> totals = new LinkedHashMap<>();
+            while (rs.next()) {
+                totals.put(rs.getDate(1).toLocalDate(), InvoiceTotals.ofCents(rs.getInt(2), rs.getLong(3)));
+            }
+            rs.close();
+            pstmt.close();
+            return totals;
+        });
+    }
+
+    // Binds status names from index on and returns the next free index
+    private static int bindStatuses(PreparedStatement pstmt, int index,
+                                    Collection<Invoice.InvoiceStatus> statuses) throws SQLException {
+        for (Invoice.InvoiceStatus status : statuses) {
+            pstmt.setString(index++, status.name());
+        }
+        return index;
+    }
+
+    // The last invoice (in export cursor order) of every run of shardSize invoices.
+    // Reads only the date index, not the invoices themselves.
+    public List<InvoiceSummary> findShardBoundaries(ExportCriteria criteria, int shardSize) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT i.id, i.invoice_date FROM invoices i" + criteriaWhere(criteria, params) +
+            " ORDER BY i.invoice_date DESC, i.id DESC";
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            pstmt.setFetchSize(criteria.getFetchSize());
+            ResultSet rs = pstmt.executeQuery();
+            List<InvoiceSummary> boundaries = new ArrayList<>();
+            int count = 0;
+            int lastId = 0;
+            Date lastDate = null;
+            while (rs.next()) {
+                count++;
+                lastId = rs.getInt(1);
+                lastDate = rs.getDate(2);
+                if (count % shardSize == 0) {
+                    boundaries.add(shardBoundary(lastId, lastDate));
+                }
+            }
+            if (count % shardSize != 0) {
+                boundaries.add(shardBoundary(lastId, lastDate));
+            }
+            rs.close();
+            pstmt.close();
+            return boundaries;
+        });
+    }
+
+    private static InvoiceSummary shardBoundary(int id, Date invoiceDate) {
+        InvoiceSummary boundary = new InvoiceSummary();
+        boundary.setId(id);
+        boundary.setInvoiceDate(invoiceDate.toLocalDate());
+        return boundary;
+    }
+
+    // Streams matching invoices with their items, newest first, from a single joined cursor.
+    // Only the invoice being assembled is held in memory; the reader connection stays
+    // leased until the handler has seen the last invoice, under the pool's cursor limit.
+    public void forEachInvoice(ExportCriteria criteria, InvoiceSource.InvoiceHandler handler) throws Exception {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT i.*, it.id AS item_id, it.description AS item_description, " +
+            "it.quantity AS item_quantity, it.unit_price AS item_unit_price, it.total AS item_total " +
+            "FROM invoices i LEFT JOIN invoice_items it ON it.invoice_id = i.id" +
+            criteriaWhere(criteria, params) +
+            " ORDER BY i.invoice_date DESC, i.id DESC, it.id";
+
+        Connection connection = pool.acquireCursorReader();
+        try {
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            pstmt.setFetchSize(criteria.getFetchSize());
+            ResultSet rs = pstmt.executeQuery();
+            try {
+                Invoice current = null;
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    if (current == null || current.getId() != id) {
+                        if (current != null) {
+                            handler.handle(current);
+                        }
+                        current = mapResultSetToInvoice(rs);
+                    }
+
+                    int itemId = rs.getInt("item_id");
+                    if (!rs.wasNull()) {
+                        current.addItem(mapJoinedItem(rs, itemId, id));
+                    }
+                }
+                if (current != null) {
+                    handler.handle(current);
+                }
+            } finally {
+                rs.close();
+                pstmt.close();
+            }
+        } finally {
+            pool.releaseCursorReader(connection);
+        }
+    }
+
+    // Date bounds go into SQL so they use idx_invoices_date instead of filtering in Java
+    private static String criteriaWhere(ExportCriteria criteria, List<Object> params) {
+        StringBuilder where = new StringBuilder(" WHERE 1=1");
+        if (criteria.getFromDate() != null) {
+            where.append(" AND i.invoice_date >= ?");
+            params.add(Date.valueOf(criteria.getFromDate()));
+        }
+        if (criteria.getToDate() != null) {
+            where.append(" AND i.invoice_date < ?");
+            params.add(Date.valueOf(criteria.getToDate().plusDays(1)));
+        }
+        // Keyset resume point: strictly after the last exported invoice in cursor order
+        if (criteria.getAfterDate() != null) {
+            Date afterDate = Date.valueOf(criteria.getAfterDate());
+            // The plain bound lets SQLite seek in idx_invoices_date; the OR alone scans all of it
+            where.append(" AND i.invoice_date <= ? AND (i.invoice_date < ? OR (i.invoice_date = ? AND i.id < ?))");
+            params.add(afterDate);
+            params.add(afterDate);
+            params.add(afterDate);
+            params.add(criteria.getAfterId());
+        }
+        // ...and up to and including this one, for exports split into shards
+        if (criteria.getThroughDate() != null) {
+            Date throughDate = Date.valueOf(criteria.getThroughDate());
+            where.append(" AND i.invoice_date >= ? AND (i.invoice_date > ? OR (i.invoice_date = ? AND i.id >= ?))");
+            params.add(throughDate);
+            params.add(throughDate);
+            params.add(throughDate);
+            params.add(criteria.getThroughId());
+        }
+        if (criteria.getChangedAfter() != null) {
+            where.append(" AND i.change_seq > ? AND i.change_seq <= ?");
+            params.add(criteria.getChangedAfter());
+            params.add(criteria.getChangedThrough());
+        }
+        // NOCASE so the lookup can use idx_invoices_customer
+        if (criteria.getCustomerName() != null) {
+            where.append(" AND i.customer_name = ? COLLATE NOCASE");
+            params.add(criteria.getCustomerName());
+        }
+        return where.toString();
+    }
+
+    private InvoiceItem mapJoinedItem(ResultSet rs, int itemId, int invoiceId) throws SQLException {
+        InvoiceItem item = new InvoiceItem();
+        item.setId(itemId);
+        item.setInvoiceId(invoiceId);
+        item.setDescription(rs.getString("item_description"));
+        item.setQuantity(rs.getBigDecimal("item_quantity"));
+        item.setUnitPrice(rs.getBigDecimal("item_unit_price"));
+        item.setTotal(rs.getBigDecimal("item_total"));
+        return item;
+    }
+
+    public List<InvoiceSummary> findInvoiceSummaries(InvoiceQuery query) throws SQLException {
+        List<InvoiceSummary> summaries = new ArrayList<>();
+        InvoiceQuery.SortOrder sort = query.getSortOrder();
+        String op = sort.isAscending() ? ">" : "<";
+        String dir = sort.isAscending() ? "ASC" : "DESC";
+
+        StringBuilder sql = new StringBuilder("SELECT " + SUMMARY_COLUMNS + " FROM invoices WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+
+        String term = query.getSearchTerm() != null ? query.getSearchTerm().trim() : "";
+        if (!term.isEmpty()) {
+            String pattern = "%" + term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            sql.append(" AND (invoice_number LIKE ? ESCAPE '\\' OR customer_name LIKE ? ESCAPE '\\')");
+            params.add(pattern);
+            params.add(pattern);
+        }
+
+        if (query.getStatus() != null) {
+            sql.append(" AND status = ?");
+            params.add(query.getStatus().name());
+        }
+
+        // Keyset pagination: continue strictly after the last row already shown
+        InvoiceSummary after = query.getAfter();
+        if (after != null) {
+            Object key = sortKey(sort, after);
+            sql.append(" AND (").append(sort.getColumn()).append(" ").append(op).append(" ?")
+               .append(" OR (").append(sort.getColumn()).append(" = ? AND id ").append(op).append(" ?))");
+            params.add(key);
+            params.add(key);
+            params.add(after.getId());
+        }
+
+        sql.append(" ORDER BY ").append(sort.getColumn()).append(" ").append(dir)
+           .append(", id ").append(dir)
+           .append(" LIMIT ?");
+        params.add(query.getPageSize());
+
+        return read(connection -> {
+            PreparedStatement pstmt = connection.prepareStatement(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                summaries.add(mapResultSetToSummary(rs));
+            }
+
+            rs.close();
+            pstmt.close();
+            return summaries;
+        });
+    }
+
+    private static Object sortKey(InvoiceQuery.SortOrder sort, InvoiceSummary row) {
+        switch (sort) {
+            case NUMBER:
+                return row.getInvoiceNumber();
+            case CUSTOMER:
+                return row.getCustomerName();
+            case AMOUNT:
+                return row.getTotal();
+            default:
+                return Date.valueOf(row.getInvoiceDate());
+        }
+    }
+
+    public List<Invoice> getInvoicesByIds(List<Integer> ids) throws SQLException {
+        return read(connection -> {
+            List<Invoice> invoices = new ArrayList<>();
+            Map<Integer, Invoice> invoicesById = new HashMap<>();
+
+            for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+                String sql = "SELECT * FROM invoices WHERE id IN (" + placeholders(chunk.size()) + ")";
+
+                PreparedStatement pstmt = connection.prepareStatement(sql);
+                bindIds(pstmt, chunk);
+                ResultSet rs = pstmt.executeQuery();
+
+                while (rs.next()) {
+                    Invoice invoice = mapResultSetToInvoice(rs);
+                    invoicesById.put(invoice.getId(), invoice);
+                }
+
+                rs.close();
+                pstmt.close();
+            }
+
+            loadItems(connection, invoicesById);
+
+            // Keep the caller's ordering
+            for (Integer id : ids) {
+                Invoice invoice = invoicesById.get(id);
+                if (invoice != null) {
+                    invoices.add(invoice);
+                }
+            }
+
+            return invoices;
+        });
+    }
+
+    private void loadItems(Connection connection, Map<Integer, Invoice> invoicesById) throws SQLException {
+        List<Integer> ids = new ArrayList<>(invoicesById.keySet());
+
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+            String sql = "SELECT * FROM invoice_items WHERE invoice_id IN (" +
+                placeholders(chunk.size()) + ") ORDER BY invoice_id, id";
+
+            PreparedStatement pstmt = connection.prepareStatement(sql);
+            bindIds(pstmt, chunk);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                invoicesById.get(rs.getInt("invoice_id")).addItem(mapResultSetToItem(rs));
+            }
+
+            rs.close();
+            pstmt.close();
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    private static void bindIds(PreparedStatement pstmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            pstmt.setInt(i + 1, ids.get(i));
+        }
+    }
+
+
+    private List<InvoiceItem> getInvoiceItems(Connection connection, int invoiceId) throws SQLException {
         List<InvoiceItem> items = new ArrayList<>();
         String sql = "SELECT * FROM invoice_items WHERE invoice_id=? ORDER BY id";
-        
-        PreparedStatement pstmt = connection.prepareStatement(sql);
+
+        PreparedStatement pstmt = prepareCached(connection, sql);
         pstmt.setInt(1, invoiceId);
         ResultSet rs = pstmt.executeQuery();
-        
+
         while (rs.next()) {
-            InvoiceItem item = new InvoiceItem();
-            item.setId(rs.getInt("id"));
-            item.setInvoiceId(rs.getInt("invoice_id"));
-            item.setDescription(rs.getString("description"));
-            item.setQuantity(rs.getBigDecimal("quantity"));
-            item.setUnitPrice(rs.getBigDecimal("unit_price"));
-            item.setTotal(rs.getBigDecimal("total"));
-            
-            items.add(item);
-        }
-        
-        pstmt.close();
-        
-        System.out.println("DEBUG: Loaded " + items.size() + " items for invoice ID " + invoiceId);
-        
+            items.add(mapResultSetToItem(rs));
+        }
+
+        rs.close();
+
         return items;
     }
-    
+
+    private InvoiceSummary mapResultSetToSummary(ResultSet rs) throws SQLException {
+        InvoiceSummary summary = new InvoiceSummary();
+        summary.setId(rs.getInt("id"));
+        summary.setInvoiceNumber(rs.getString("invoice_number"));
+        summary.setCustomerName(rs.getString("customer_name"));
+        summary.setInvoiceDate(rs.getDate("invoice_date").toLocalDate());
+        summary.setTotal(rs.getBigDecimal("total"));
+        summary.setStatus(Invoice.InvoiceStatus.valueOf(rs.getString("status")));
+        return summary;
+    }
+
+    private InvoiceItem mapResultSetToItem(ResultSet rs) throws SQLException {
+        InvoiceItem item = new InvoiceItem();
+        item.setId(rs.getInt("id"));
+        item.setInvoiceId(rs.getInt("invoice_id"));
+        item.setDescription(rs.getString("description"));
+        item.setQuantity(rs.getBigDecimal("quantity"));
+        item.setUnitPrice(rs.getBigDecimal("unit_price"));
+        item.setTotal(rs.getBigDecimal("total"));
+        return item;
+    }
+
     private Invoice mapResultSetToInvoice(ResultSet rs) throws SQLException {
         Invoice invoice = new Invoice();
         invoice.setId(rs.getInt("id"));
@@ -327,42 +1049,288 @@ public class DatabaseService {
         invoice.setNotes(rs.getString("notes"));
         return invoice;
     }
-    
+
     public void deleteInvoice(int id) throws SQLException {
-        String sql = "DELETE FROM invoices WHERE id=?";
-        PreparedStatement pstmt = connection.prepareStatement(sql);
-        pstmt.setInt(1, id);
-        pstmt.executeUpdate();
-        pstmt.close();
+        deleteInvoices(java.util.Collections.singletonList(id));
     }
-    
-    public String generateInvoiceNumber() throws SQLException {
-        String sql = "SELECT invoice_number FROM invoices ORDER BY id DESC LIMIT 1";
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery(sql);
-        
-        int nextNumber = 1;
-        if (rs.next()) {
-            String lastNumber = rs.getString("invoice_number");
-            try {
-                String numPart = lastNumber.replaceAll("[^0-9]", "");
-                nextNumber = Integer.parseInt(numPart) + 1;
-            } catch (Exception e) {
-                // Parsing failed, start from 1
+
+    public int deleteInvoices(List<Integer> ids) throws SQLException {
+        return write(connection -> {
+            int deleted = 0;
+            for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+                String in = " IN (" + placeholders(chunk.size()) + ")";
+                removeFromAggregates(connection, chunk);
+
+                // Foreign keys are not enforced by default in SQLite, so remove items explicitly
+                PreparedStatement itemsStmt = connection.prepareStatement(
+                    "DELETE FROM invoice_items WHERE invoice_id" + in);
+                bindIds(itemsStmt, chunk);
+                itemsStmt.executeUpdate();
+                itemsStmt.close();
+
+                PreparedStatement pstmt = connection.prepareStatement("DELETE FROM invoices WHERE id" + in);
+                bindIds(pstmt, chunk);
+                deleted += pstmt.executeUpdate();
+                pstmt.close();
+                pendingInvalidations.addAll(chunk);
             }
+            return deleted;
+        });
+    }
+
+    public String getSetting(String key) throws SQLException {
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, "SELECT value FROM settings WHERE key=?");
+            pstmt.setString(1, key);
+            ResultSet rs = pstmt.executeQuery();
+            String value = rs.next() ? rs.getString(1) : null;
+            rs.close();
+            return value;
+        });
+    }
+
+    // Every setting whose key starts with prefix, in key order
+    public Map<String, String> getSettings(String prefix) throws SQLException {
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection,
+                "SELECT key, value FROM settings WHERE key >= ? AND key < ? ORDER BY key");
+            pstmt.setString(1, prefix);
+            pstmt.setString(2, prefix + Character.MAX_VALUE);
+            ResultSet rs = pstmt.executeQuery();
+            Map<String, String> settings = new LinkedHashMap<>();
+            while (rs.next()) {
+                settings.put(rs.getString(1), rs.getString(2));
+            }
+            rs.close();
+            return settings;
+        });
+    }
+
+    // A null value removes the setting
+    public void setSetting(String key, String value) throws SQLException {
+        write(connection -> {
+            PreparedStatement pstmt;
+            if (value == null) {
+                pstmt = prepareCached(connection, "DELETE FROM settings WHERE key=?");
+                pstmt.setString(1, key);
+            } else {
+                pstmt = prepareCached(connection, "INSERT OR REPLACE INTO settings (key, value) VALUES (?, ?)");
+                pstmt.setString(1, key);
+                pstmt.setString(2, value);
+            }
+            pstmt.executeUpdate();
+            return null;
+        });
+    }
+
+    // Runs on a pooled read-only connection (or the writer, when called from inside a write)
+    private <T> T read(SqlWork<T> work) throws SQLException {
+        Connection connection = pool.acquireReader();
+        try {
+            return work.run(connection);
+        } finally {
+            pool.releaseReader(connection);
         }
-        
-        stmt.close();
-        return String.format("INV-%d-%04d", LocalDate.now().getYear(), nextNumber);
     }
-    
-    public void close() {
+
+    // Runs on the writer connection, serialized with every other write
+    private <T> T withWriter(SqlWork<T> work) throws SQLException {
+        Connection connection = pool.acquireWriter();
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            return work.run(connection);
+        } finally {
+            pool.releaseWriter();
+        }
+    }
+
+    // Runs on the writer inside a transaction; nested calls join the outer transaction
+    private <T> T write(SqlWork<T> work) throws SQLException {
+        return withWriter(connection -> {
+            if (!connection.getAutoCommit()) {
+                return work.run(connection);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                // Only now are the changes visible to readers; evicting earlier would let
+                // a concurrent read cache the old rows again. A rollback evicts too, which
+                // also drops anything read back from inside the transaction.
+                if (!pendingInvalidations.isEmpty()) {
+                    invoiceCache.invalidate(pendingInvalidations);
+                    pendingInvalidations.clear();
+                    dataVersion.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    // For the fixed query set; the cache owns the statement, so callers only close ResultSets
+    private PreparedStatement prepareCached(Connection connection, String sql) throws SQLException {
+        return pool.statements(connection).prepare(sql);
+    }
+
+    public long getStatementCacheHits() {
+        return pool.getStatementCacheHits();
+    }
+
+    public long getStatementCacheMisses() {
+        return pool.getStatementCacheMisses();
+    }
+
+    public InvoiceCache getInvoiceCache() {
+        return invoiceCache;
+    }
+
+    // Changes whenever an invoice is inserted, updated or deleted
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    // How many export cursors can stream at once, across all running exports
+    public int getCursorReaderCount() {
+        return pool.getCursorReaderCount();
+    }
+
+    private interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    // Preview of the next number in this year's series; it is only taken when an invoice is saved
+    public String generateInvoiceNumber() throws SQLException {
+        int year = LocalDate.now().getYear();
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, "SELECT next_value FROM invoice_sequences WHERE year=?");
+            pstmt.setInt(1, year);
+            ResultSet rs = pstmt.executeQuery();
+            long next = rs.next() ? rs.getLong(1) : 1;
+            rs.close();
+            return InvoiceNumberBlock.format(year, next);
+        });
+    }
+
+    // Takes count consecutive numbers of the year's series in one update, e.g. ahead of a bulk import
+    public InvoiceNumberBlock reserveInvoiceNumbers(int year, int count) throws SQLException {
+        return write(connection -> new InvoiceNumberBlock(year, allocateInvoiceNumbers(connection, year, count), count));
+    }
+
+    // Advances the year's counter by count and returns the first value taken. The writer
+    // serializes allocations, so no two transactions can be handed the same value.
+    private long allocateInvoiceNumbers(Connection connection, int year, int count) throws SQLException {
+        PreparedStatement update = prepareCached(connection,
+            "INSERT INTO invoice_sequences (year, next_value) VALUES (?, 1 + ?) " +
+            "ON CONFLICT (year) DO UPDATE SET next_value = next_value + ?");
+        update.setInt(1, year);
+        update.setInt(2, count);
+        update.setInt(3, count);
+        update.executeUpdate();
+
+        PreparedStatement select = prepareCached(connection, "SELECT next_value FROM invoice_sequences WHERE year=?");
+        select.setInt(1, year);
+        ResultSet rs = select.executeQuery();
+        rs.next();
+        long next = rs.getLong(1);
+        rs.close();
+        return next - count;
+    }
+
+    // Takes the next change_seq from the counter row; the writer serializes the bump like
+    // allocateInvoiceNumbers, and a rolled-back save gives its value back
+    private long nextChangeSeq(Connection connection) throws SQLException {
+        PreparedStatement update = prepareCached(connection,
+            "UPDATE change_sequence SET last_value = last_value + 1 WHERE id = 1");
+        update.executeUpdate();
+
+        PreparedStatement select = prepareCached(connection, "SELECT last_value FROM change_sequence WHERE id = 1");
+        ResultSet rs = select.executeQuery();
+        rs.next();
+        long value = rs.getLong(1);
+        rs.close();
+        return value;
+    }
+
+    // Keeps a series ahead of numbers entered by hand, so it never hands them out again
+    private void advanceInvoiceSequence(Connection connection, String invoiceNumber) throws SQLException {
+        Matcher matcher = SERIES_NUMBER.matcher(invoiceNumber);
+        if (!matcher.matches()) {
+            return;
         }
+        String year = matcher.group(1);
+        String value = matcher.group(2);
+        if (value.length() >= 8 && value.startsWith(year)) {
+            // Same left-overs of the old generator that migration 5 skips
+            return;
+        }
+
+        PreparedStatement pstmt = prepareCached(connection,
+            "INSERT INTO invoice_sequences (year, next_value) VALUES (?, ?) " +
+            "ON CONFLICT (year) DO UPDATE SET next_value = MAX(next_value, excluded.next_value)");
+        pstmt.setInt(1, Integer.parseInt(year));
+        pstmt.setLong(2, Long.parseLong(value) + 1);
+        pstmt.executeUpdate();
+    }
+
+    // Which of the given invoice numbers are already taken
+    public Set<String> findExistingInvoiceNumbers(List<String> invoiceNumbers) throws SQLException {
+        return read(connection -> {
+            Set<String> existing = new HashSet<>();
+            for (int from = 0; from < invoiceNumbers.size(); from += IN_CHUNK_SIZE) {
+                List<String> chunk = invoiceNumbers.subList(from, Math.min(from + IN_CHUNK_SIZE, invoiceNumbers.size()));
+                PreparedStatement pstmt = connection.prepareStatement(
+                    "SELECT invoice_number FROM invoices WHERE invoice_number IN (" + placeholders(chunk.size()) + ")");
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+                rs.close();
+                pstmt.close();
+            }
+            return existing;
+        });
+    }
+
+    private boolean invoiceNumberExists(Connection connection, String invoiceNumber) throws SQLException {
+        PreparedStatement pstmt = prepareCached(connection, "SELECT id FROM invoices WHERE invoice_number=?");
+        pstmt.setString(1, invoiceNumber);
+        ResultSet rs = pstmt.executeQuery();
+        boolean exists = rs.next();
+        rs.close();
+        return exists;
     }
-}
\ No newline at end of file
+
+    // Folds the WAL back into the main file so a plain file copy is a complete backup
+    public void checkpoint() throws SQLException {
+        withWriter(connection -> {
+            Statement stmt = connection.createStatement();
+            stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            stmt.close();
+            return null;
+        });
+    }
+
+    public void compact() throws SQLException {
+        withWriter(connection -> {
+            Statement stmt = connection.createStatement();
+            stmt.execute("VACUUM");
+            stmt.close();
+            return null;
+        });
+    }
+
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+}
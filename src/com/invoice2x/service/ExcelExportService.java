@@ -3,16 +3,50 @@ package com.invoice2x.service;
 import com.invoice2x.model.Invoice;
 import com.invoice2x.model.InvoiceItem;
 import com.invoice2x.util.ConfigManager;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public class ExcelExportService {
+public class ExcelExportService implements InvoiceExporter {
     
     private static ExcelExportService instance;
     
+    private static final String[] LEDGER_INVOICE_HEADERS = {
+        "Invoice #", "Date", "Due Date", "Status", "Customer", "Email", "Address",
+        "Subtotal", "Tax", "Total", "Items", "Notes"
+    };
+    private static final int[] LEDGER_INVOICE_WIDTHS = {
+        4500, 3200, 3200, 3000, 7000, 7000, 9000, 3500, 3500, 3500, 2000, 9000
+    };
+    private static final String[] LEDGER_ITEM_HEADERS = {
+        "Invoice #", "Line", "Description", "Quantity", "Unit Price", "Total"
+    };
+    private static final int[] LEDGER_ITEM_WIDTHS = {
+        4500, 2000, 10000, 3000, 3500, 3500
+    };
+    
+    // Kept across exports; rebuilt only when the company.* settings or the template file change
+    private InvoiceTemplate template;
+    private String templateKey;
+    
     private ExcelExportService() {
     }
     
@@ -26,21 +60,60 @@ public class ExcelExportService {
     
     public void exportInvoices(List<Invoice> invoices, String filePath, 
                                ExportProgressListener listener) throws Exception {
+        exportInvoices(invoices, filePath, ExportOptions.fromConfig(ConfigManager.getInstance()), listener);
+    }
+    
+    public void exportInvoices(List<Invoice> invoices, String filePath, ExportOptions options,
+                               ExportProgressListener listener) throws Exception {
+        export(InvoiceSource.of(invoices), filePath, options, listener);
+    }
+    
+    @Override
+    public void export(InvoiceSource source, String filePath, 
+                       ExportProgressListener listener) throws Exception {
+        export(source, filePath, ExportOptions.fromConfig(ConfigManager.getInstance()), listener);
+    }
+    
+    public void export(InvoiceSource source, String filePath, ExportOptions options,
+                       ExportProgressListener listener) throws Exception {
+        
+        if (options.getFormat() == ExportOptions.Format.LEDGER) {
+            exportLedger(source, filePath, options, listener);
+            return;
+        }
+        
+        int total = source.size();
+        InvoiceTemplate template = getTemplate(options);
+        Workbook workbook = createWorkbook(options);
         
-        Workbook workbook = new XSSFWorkbook();
+        // Layouts are built in parallel; this thread alone writes them, in input order
+        int parallelism = Math.min(options.getParallelism(), Math.max(1, total));
+        ExecutorService builders = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "export-layout");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
         
         try {
-            int current = 0;
-            for (Invoice invoice : invoices) {
-                // BUG FIX: Create unique sheet for EACH invoice
-                createInvoiceSheet(workbook, invoice, current + 1);
-                
-                current++;
-                if (listener != null) {
-                    listener.onProgress(current, invoices.size(), 
-                        "Processing invoice " + current + " of " + invoices.size() + 
-                        " (" + invoice.getInvoiceNumber() + ")");
+            ExportStyles styles = new ExportStyles(workbook);
+            SheetWriter writer = new SheetWriter(workbook, styles, template, total, listener);
+            
+            // Bounds how many finished layouts wait in memory for the writer
+            int window = parallelism * 4;
+            Deque<Future<SheetLayout>> inFlight = new ArrayDeque<>();
+            
+            source.forEach(invoice -> {
+                if (builders == null) {
+                    writer.write(template.stamp(invoice));
+                    return;
+                }
+                inFlight.add(builders.submit(() -> template.stamp(invoice)));
+                if (inFlight.size() >= window) {
+                    writer.write(awaitLayout(inFlight.poll()));
                 }
+            });
+            while (!inFlight.isEmpty()) {
+                writer.write(awaitLayout(inFlight.poll()));
             }
             
             // Write to file
@@ -53,213 +126,153 @@ public class ExcelExportService {
             }
             
         } finally {
+            if (builders != null) {
+                builders.shutdownNow();
+            }
             workbook.close();
+            if (workbook instanceof SXSSFWorkbook) {
+                // Delete the temp files holding the flushed rows
+                ((SXSSFWorkbook) workbook).dispose();
+            }
         }
     }
     
-   
-    private void createInvoiceSheet(Workbook workbook, Invoice invoice, int sheetNumber) {
-        
-        // Create unique sheet name for each invoice
-        String sheetName = sanitizeSheetName(invoice.getInvoiceNumber());
-        
-        // If sheet name already exists, append number
-        if (workbook.getSheet(sheetName) != null) {
-            sheetName = sanitizeSheetName(invoice.getInvoiceNumber() + "_" + sheetNumber);
-        }
-        
-        Sheet sheet = workbook.createSheet(sheetName);
-        
-        // Create styles
-        CellStyle headerStyle = createHeaderStyle(workbook);
-        CellStyle boldStyle = createBoldStyle(workbook);
-        CellStyle currencyStyle = createCurrencyStyle(workbook);
-        CellStyle tableHeaderStyle = createTableHeaderStyle(workbook);
-        CellStyle tableCellStyle = createTableCellStyle(workbook);
-        CellStyle totalStyle = createTotalStyle(workbook);
-        
-        int rowNum = 0;
-        
-        // Title
-        Row titleRow = sheet.createRow(rowNum++);
-        Cell titleCell = titleRow.createCell(0);
-        titleCell.setCellValue("INVOICE");
-        titleCell.setCellStyle(headerStyle);
-        
-        rowNum++; // Empty row
-        
-        // Invoice details
-        createRow(sheet, rowNum++, "Invoice #:", invoice.getInvoiceNumber(), boldStyle);
-        createRow(sheet, rowNum++, "Date:", invoice.getInvoiceDate().toString(), boldStyle);
-        createRow(sheet, rowNum++, "Due Date:", invoice.getDueDate().toString(), boldStyle);
-        createRow(sheet, rowNum++, "Status:", invoice.getStatus().getDisplayName(), boldStyle);
-        
-        rowNum++; // Empty row
-        
-        // Company info
-        ConfigManager config = ConfigManager.getInstance();
-        createRow(sheet, rowNum++, "From:", config.getProperty("company.name", "Your Company"), boldStyle);
-        createRow(sheet, rowNum++, "", config.getProperty("company.address", ""), null);
-        
-        rowNum++; // Empty row
-        
-        // Customer info
-        createRow(sheet, rowNum++, "To:", invoice.getCustomerName(), boldStyle);
-        if (invoice.getCustomerEmail() != null && !invoice.getCustomerEmail().isEmpty()) {
-            createRow(sheet, rowNum++, "", invoice.getCustomerEmail(), null);
-        }
-        if (invoice.getCustomerAddress() != null && !invoice.getCustomerAddress().isEmpty()) {
-            createRow(sheet, rowNum++, "", invoice.getCustomerAddress(), null);
-        }
+    
+     // Ledger format: one row per invoice on "Invoices" and one row per line item on
+     // "Line Items", both filled in a single pass over the invoices
+     
+    private void exportLedger(InvoiceSource source, String filePath, ExportOptions options,
+                              ExportProgressListener listener) throws Exception {
         
-        rowNum++; // Empty row
+        int total = source.size();
         
-        // Items table header
-        Row tableHeaderRow = sheet.createRow(rowNum++);
-        String[] headers = {"#", "Description", "Quantity", "Unit Price", "Total"};
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = tableHeaderRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(tableHeaderStyle);
-        }
+        // Always streamed, whatever options.isStreaming() says; the sheets can be huge
+        SXSSFWorkbook workbook = new SXSSFWorkbook(options.getRowWindow());
+        workbook.setCompressTempFiles(options.isCompressTempFiles());
         
-       
-        int itemNum = 1;
-        for (InvoiceItem item : invoice.getItems()) {
-            Row itemRow = sheet.createRow(rowNum++);
+        try {
+            ExportStyles styles = new ExportStyles(workbook);
+            LedgerSheet invoiceSheet = new LedgerSheet(workbook, styles, "Invoices",
+                                                       LEDGER_INVOICE_HEADERS, LEDGER_INVOICE_WIDTHS);
+            LedgerSheet itemSheet = new LedgerSheet(workbook, styles, "Line Items",
+                                                    LEDGER_ITEM_HEADERS, LEDGER_ITEM_WIDTHS);
             
-            Cell numCell = itemRow.createCell(0);
-            numCell.setCellValue(itemNum++);
-            numCell.setCellStyle(tableCellStyle);
+            int[] current = {0};
+            source.forEach(invoice -> {
+                Row row = invoiceSheet.nextRow();
+                row.createCell(0).setCellValue(invoice.getInvoiceNumber());
+                setDateCell(row, 1, invoice.getInvoiceDate(), styles);
+                setDateCell(row, 2, invoice.getDueDate(), styles);
+                row.createCell(3).setCellValue(invoice.getStatus().getDisplayName());
+                row.createCell(4).setCellValue(invoice.getCustomerName());
+                setTextCell(row, 5, invoice.getCustomerEmail());
+                setTextCell(row, 6, invoice.getCustomerAddress());
+                setAmountCell(row, 7, invoice.getSubtotal(), styles);
+                setAmountCell(row, 8, invoice.getTax(), styles);
+                setAmountCell(row, 9, invoice.getTotal(), styles);
+                row.createCell(10).setCellValue(invoice.getItems().size());
+                setTextCell(row, 11, invoice.getNotes());
+                
+                int line = 1;
+                for (InvoiceItem item : invoice.getItems()) {
+                    Row itemRow = itemSheet.nextRow();
+                    itemRow.createCell(0).setCellValue(invoice.getInvoiceNumber());
+                    itemRow.createCell(1).setCellValue(line++);
+                    setTextCell(itemRow, 2, item.getDescription());
+                    setAmountCell(itemRow, 3, item.getQuantity(), null);
+                    setAmountCell(itemRow, 4, item.getUnitPrice(), styles);
+                    setAmountCell(itemRow, 5, item.getTotal(), styles);
+                }
+                
+                current[0]++;
+                if (listener != null) {
+                    listener.onProgress(current[0], total, 
+                        "Processing invoice " + current[0] + " of " + total + 
+                        " (" + invoice.getInvoiceNumber() + ")");
+                }
+            });
             
-            Cell descCell = itemRow.createCell(1);
-            descCell.setCellValue(item.getDescription());
-            descCell.setCellStyle(tableCellStyle);
+            invoiceSheet.finish();
+            itemSheet.finish();
             
-            Cell qtyCell = itemRow.createCell(2);
-            qtyCell.setCellValue(item.getQuantity().doubleValue());
-            qtyCell.setCellStyle(tableCellStyle);
+            try (FileOutputStream outputStream = new FileOutputStream(filePath)) {
+                workbook.write(outputStream);
+            }
             
-            Cell priceCell = itemRow.createCell(3);
-            priceCell.setCellValue(item.getUnitPrice().doubleValue());
-            priceCell.setCellStyle(currencyStyle);
+            if (listener != null) {
+                listener.onComplete(filePath);
+            }
             
-            Cell totalCell = itemRow.createCell(4);
-            totalCell.setCellValue(item.getTotal().doubleValue());
-            totalCell.setCellStyle(currencyStyle);
-        }
-        
-        rowNum++; // Empty row
-        
-        
-        createTotalRow(sheet, rowNum++, "Subtotal:", invoice.getSubtotal(), boldStyle, currencyStyle);
-        createTotalRow(sheet, rowNum++, "Tax:", invoice.getTax(), boldStyle, currencyStyle);
-        createTotalRow(sheet, rowNum++, "TOTAL:", invoice.getTotal(), totalStyle, totalStyle);
-        
-        rowNum++; // Empty row
-        
-        // Notes
-        if (invoice.getNotes() != null && !invoice.getNotes().isEmpty()) {
-            createRow(sheet, rowNum++, "Notes:", invoice.getNotes(), boldStyle);
+        } finally {
+            workbook.close();
+            workbook.dispose();
         }
-        
-        // Set column widths
-        sheet.setColumnWidth(0, 2000);
-        sheet.setColumnWidth(1, 8000);
-        sheet.setColumnWidth(2, 3000);
-        sheet.setColumnWidth(3, 3500);
-        sheet.setColumnWidth(4, 3500);
     }
     
-    private void createRow(Sheet sheet, int rowNum, String label, String value, CellStyle style) {
-        Row row = sheet.createRow(rowNum);
-        
-        Cell labelCell = row.createCell(0);
-        labelCell.setCellValue(label);
-        if (style != null) {
-            labelCell.setCellStyle(style);
-        }
-        
-        if (value != null) {
-            Cell valueCell = row.createCell(1);
-            valueCell.setCellValue(value);
+    private void setTextCell(Row row, int column, String value) {
+        if (value != null && !value.isEmpty()) {
+            row.createCell(column).setCellValue(value);
         }
     }
     
-    private void createTotalRow(Sheet sheet, int rowNum, String label, BigDecimal amount,
-                               CellStyle labelStyle, CellStyle amountStyle) {
-        Row row = sheet.createRow(rowNum);
-        
-        Cell labelCell = row.createCell(3);
-        labelCell.setCellValue(label);
-        labelCell.setCellStyle(labelStyle);
-        
-        Cell amountCell = row.createCell(4);
-        amountCell.setCellValue(amount.doubleValue());
-        amountCell.setCellStyle(amountStyle);
+    private void setDateCell(Row row, int column, java.time.LocalDate value, ExportStyles styles) {
+        if (value != null) {
+            Cell cell = row.createCell(column);
+            cell.setCellValue(value);
+            cell.setCellStyle(styles.getDate());
+        }
     }
     
-    // Style creation methods
-    private CellStyle createHeaderStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
-        font.setFontHeightInPoints((short) 18);
-        style.setFont(font);
-        return style;
+    private void setAmountCell(Row row, int column, BigDecimal value, ExportStyles styles) {
+        if (value != null) {
+            Cell cell = row.createCell(column);
+            cell.setCellValue(value.doubleValue());
+            if (styles != null) {
+                cell.setCellStyle(styles.getCurrency());
+            }
+        }
     }
     
-    private CellStyle createBoldStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
-        style.setFont(font);
-        return style;
+    private Workbook createWorkbook(ExportOptions options) {
+        if (!options.isStreaming()) {
+            return new XSSFWorkbook();
+        }
+        // Only rowWindow rows per sheet stay in memory; the rest go to temp files
+        SXSSFWorkbook workbook = new SXSSFWorkbook(options.getRowWindow());
+        workbook.setCompressTempFiles(options.isCompressTempFiles());
+        return workbook;
     }
     
-    private CellStyle createCurrencyStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        DataFormat format = workbook.createDataFormat();
-        style.setDataFormat(format.getFormat("$#,##0.00"));
-        return style;
+   
+    private SheetLayout awaitLayout(Future<SheetLayout> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
     }
     
-    private CellStyle createTableHeaderStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
-        style.setFont(font);
-        style.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        return style;
-    }
     
-    private CellStyle createTableCellStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        style.setBorderBottom(BorderStyle.THIN);
-        style.setBorderTop(BorderStyle.THIN);
-        style.setBorderLeft(BorderStyle.THIN);
-        style.setBorderRight(BorderStyle.THIN);
-        return style;
-    }
-    
-    private CellStyle createTotalStyle(Workbook workbook) {
-        CellStyle style = workbook.createCellStyle();
-        Font font = workbook.createFont();
-        font.setBold(true);
-        font.setFontHeightInPoints((short) 13);
-        style.setFont(font);
-        DataFormat format = workbook.createDataFormat();
-        style.setDataFormat(format.getFormat("$#,##0.00"));
-        return style;
+    private synchronized InvoiceTemplate getTemplate(ExportOptions options) throws IOException {
+        Map<String, String> company = ConfigManager.getInstance().getProperties("company.");
+        File file = options.getTemplateFile().isEmpty() ? null : new File(options.getTemplateFile());
+        String key = company + (file != null ? "|" + file.getAbsolutePath() + "@" + file.lastModified() : "");
+        
+        if (template == null || !key.equals(templateKey)) {
+            template = file != null
+                ? InvoiceTemplate.load(file, company)
+                : InvoiceTemplate.builtIn(company.getOrDefault("company.name", "Your Company"),
+                                          company.getOrDefault("company.address", ""));
+            templateKey = key;
+        }
+        return template;
     }
     
-    
-    private String sanitizeSheetName(String name) {
+    private static String sanitizeSheetName(String name) {
         // Excel sheet names can't contain: / \ ? * [ ]
         String sanitized = name.replaceAll("[/\\\\?*\\[\\]]", "-");
         // Limit to 31 characters
@@ -275,4 +288,149 @@ public class ExcelExportService {
         void onComplete(String filePath);
         void onError(Exception e);
     }
-}
\ No newline at end of file
+    
+    
+     // A ledger sheet with a frozen, filterable header row. Rolls over to
+     // "Name (2)", "Name (3)", ... when a sheet reaches the row limit.
+     
+    private static class LedgerSheet {
+        
+        private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+        
+        private final Workbook workbook;
+        private final ExportStyles styles;
+        private final String name;
+        private final String[] headers;
+        private final int[] widths;
+        private Sheet sheet;
+        private int sheetCount;
+        private int nextRow;
+        
+        LedgerSheet(Workbook workbook, ExportStyles styles, String name, String[] headers, int[] widths) {
+            this.workbook = workbook;
+            this.styles = styles;
+            this.name = name;
+            this.headers = headers;
+            this.widths = widths;
+            startSheet();
+        }
+        
+        Row nextRow() {
+            if (nextRow >= MAX_ROWS) {
+                finish();
+                startSheet();
+            }
+            return sheet.createRow(nextRow++);
+        }
+        
+        private void startSheet() {
+            sheetCount++;
+            sheet = workbook.createSheet(sheetCount == 1 ? name : name + " (" + sheetCount + ")");
+            
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(styles.getTableHeader());
+                sheet.setColumnWidth(i, widths[i]);
+            }
+            sheet.createFreezePane(0, 1);
+            nextRow = 1;
+        }
+        
+        void finish() {
+            sheet.setAutoFilter(new CellRangeAddress(0, Math.max(nextRow - 1, 1), 0, headers.length - 1));
+        }
+    }
+    
+    
+     // Writer stage: the only place invoice sheets touch the workbook
+     
+    private static class SheetWriter {
+        
+        private final Workbook workbook;
+        private final ExportStyles styles;
+        private final InvoiceTemplate template;
+        private final int total;
+        private final ExportProgressListener listener;
+        private final Set<String> sheetNames = new HashSet<>();
+        // Template styles and pictures are copied into the workbook once, on first use
+        private final Map<Integer, CellStyle> templateStyles = new HashMap<>();
+        private final Map<Integer, Integer> templatePictures = new HashMap<>();
+        private int current;
+        
+        SheetWriter(Workbook workbook, ExportStyles styles, InvoiceTemplate template, int total,
+                    ExportProgressListener listener) {
+            this.workbook = workbook;
+            this.styles = styles;
+            this.template = template;
+            this.total = total;
+            this.listener = listener;
+        }
+        
+        void write(SheetLayout layout) {
+            int sheetNumber = current + 1;
+            
+            // Create unique sheet name for each invoice
+            String sheetName = sanitizeSheetName(layout.getName());
+            
+            // If sheet name already exists, append number (sheet names are case-insensitive)
+            if (sheetNames.contains(sheetName.toLowerCase(Locale.ROOT))) {
+                sheetName = sanitizeSheetName(layout.getName() + "_" + sheetNumber);
+            }
+            sheetNames.add(sheetName.toLowerCase(Locale.ROOT));
+            
+            // BUG FIX: Create unique sheet for EACH invoice
+            Sheet sheet = workbook.createSheet(sheetName);
+            
+            for (SheetLayout.LayoutRow layoutRow : layout.getRows()) {
+                Row row = sheet.createRow(layoutRow.getIndex());
+                if (layoutRow.getHeight() >= 0) {
+                    row.setHeight(layoutRow.getHeight());
+                }
+                for (SheetLayout.LayoutCell layoutCell : layoutRow.getCells()) {
+                    Cell cell = row.createCell(layoutCell.getColumn());
+                    if (layoutCell.isNumeric()) {
+                        cell.setCellValue(layoutCell.getNumber());
+                    } else {
+                        cell.setCellValue(layoutCell.getText());
+                    }
+                    CellStyle style = layoutCell.getTemplateStyle() >= 0
+                        ? templateStyles.computeIfAbsent(layoutCell.getTemplateStyle(), 
+                                                         index -> template.copyStyle(workbook, index))
+                        : styles.get(layoutCell.getStyle());
+                    if (style != null) {
+                        cell.setCellStyle(style);
+                    }
+                }
+            }
+            
+            int[] widths = layout.getColumnWidths();
+            for (int i = 0; i < widths.length; i++) {
+                sheet.setColumnWidth(i, widths[i]);
+            }
+            for (CellRangeAddress region : layout.getMergedRegions()) {
+                // Template regions never overlap, so POI's overlap checks can be skipped
+                sheet.addMergedRegionUnsafe(region);
+            }
+            if (!layout.getPictures().isEmpty()) {
+                Drawing<?> drawing = sheet.createDrawingPatriarch();
+                for (SheetLayout.LayoutPicture picture : layout.getPictures()) {
+                    int index = templatePictures.computeIfAbsent(picture.getPicture(),
+                                                                 i -> template.copyPicture(workbook, i));
+                    drawing.createPicture(template.anchorFor(workbook, picture), index);
+                }
+            }
+            if (!template.isDisplayGridlines()) {
+                sheet.setDisplayGridlines(false);
+            }
+            
+            current++;
+            if (listener != null) {
+                listener.onProgress(current, total, 
+                    "Processing invoice " + current + " of " + total + 
+                    " (" + layout.getName() + ")");
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.invoice2x.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+ // Progress of a database-backed export, kept in the settings table so an export
+ // interrupted by a crash can pick up after the last invoice it completed.
+ // One checkpoint per output file, so concurrent jobs do not overwrite each other
+ 
+public class ExportCheckpoint {
+    
+    private static final String KEY_PREFIX = "export.checkpoint.";
+    
+    private String filePath;
+    private ExportOptions.Format format;
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private Long changedAfter;
+    private Long changedThrough;
+    private int done;
+    private int total;
+    private LocalDate lastDate;
+    private int lastId;
+    private long byteOffset;
+    
+    // Every stored checkpoint, ordered by output path; a job saves one as soon as it starts
+    public static List<ExportCheckpoint> loadAll() {
+        List<ExportCheckpoint> checkpoints = new ArrayList<>();
+        try {
+            for (String value : DatabaseService.getInstance().getSettings(KEY_PREFIX).values()) {
+                checkpoints.add(parse(value));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return checkpoints;
+    }
+    
+    // Checkpoints left by exports that crashed or failed, leaving out jobs still queued or running
+    public static List<ExportCheckpoint> loadInterrupted() {
+        ExportScheduler scheduler = ExportScheduler.getInstance();
+        List<ExportCheckpoint> interrupted = new ArrayList<>();
+        for (ExportCheckpoint checkpoint : loadAll()) {
+            if (!scheduler.isInProgress(checkpoint.getFilePath())) {
+                interrupted.add(checkpoint);
+            }
+        }
+        return interrupted;
+    }
+    
+    public void clear() throws SQLException {
+        DatabaseService.getInstance().setSetting(KEY_PREFIX + filePath, null);
+    }
+    
+    // Gives up on the export: forgets the checkpoint and removes the partly written file
+    public void discard() throws SQLException {
+        clear();
+        new File(filePath).delete();
+    }
+    
+    public void save() throws SQLException {
+        DatabaseService.getInstance().setSetting(KEY_PREFIX + filePath, format());
+    }
+    
+    // True once at least one invoice has been written past this point
+    public boolean hasPosition() {
+        return lastDate != null;
+    }
+    
+    public ExportCriteria getCriteria() {
+        ExportCriteria criteria = changedAfter != null
+            ? ExportCriteria.changes(changedAfter, changedThrough)
+            : new ExportCriteria();
+        criteria.setFromDate(fromDate);
+        criteria.setToDate(toDate);
+        return criteria;
+    }
+    
+    private String format() {
+        Properties props = new Properties();
+        props.setProperty("filePath", filePath);
+        props.setProperty("format", format.name());
+        if (fromDate != null) {
+            props.setProperty("fromDate", fromDate.toString());
+        }
+        if (toDate != null) {
+            props.setProperty("toDate", toDate.toString());
+        }
+        if (changedAfter != null) {
+            props.setProperty("changedAfter", String.valueOf(changedAfter));
+            props.setProperty("changedThrough", String.valueOf(changedThrough));
+        }
+        props.setProperty("done", String.valueOf(done));
+        props.setProperty("total", String.valueOf(total));
+        if (lastDate != null) {
+            props.setProperty("lastDate", lastDate.toString());
+            props.setProperty("lastId", String.valueOf(lastId));
+            props.setProperty("byteOffset", String.valueOf(byteOffset));
+        }
+        
+        StringWriter out = new StringWriter();
+        try {
+            props.store(out, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+    
+    private static ExportCheckpoint parse(String value) throws IOException {
+        Properties props = new Properties();
+        props.load(new StringReader(value));
+        
+        ExportCheckpoint checkpoint = new ExportCheckpoint();
+        checkpoint.filePath = props.getProperty("filePath");
+        checkpoint.format = ExportOptions.Format.fromName(props.getProperty("format", ""));
+        checkpoint.fromDate = parseDate(props.getProperty("fromDate"));
+        checkpoint.toDate = parseDate(props.getProperty("toDate"));
+        if (props.getProperty("changedAfter") != null) {
+            checkpoint.changedAfter = Long.parseLong(props.getProperty("changedAfter"));
+            checkpoint.changedThrough = Long.parseLong(props.getProperty("changedThrough"));
+        }
+        checkpoint.done = Integer.parseInt(props.getProperty("done", "0"));
+        checkpoint.total = Integer.parseInt(props.getProperty("total", "0"));
+        checkpoint.lastDate = parseDate(props.getProperty("lastDate"));
+        checkpoint.lastId = Integer.parseInt(props.getProperty("lastId", "0"));
+        checkpoint.byteOffset = Long.parseLong(props.getProperty("byteOffset", "0"));
+        return checkpoint;
+    }
+    
+    private static LocalDate parseDate(String value) {
+        return value != null ? LocalDate.parse(value) : null;
+    }
+    
+    // Getters and Setters
+    public String getFilePath() {
+        return filePath;
+    }
+    
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    
+    public ExportOptions.Format getFormat() {
+        return format;
+    }
+    
+    public void setFormat(ExportOptions.Format format) {
+        this.format = format;
+    }
+    
+    public void setCriteria(ExportCriteria criteria) {
+        this.fromDate = criteria.getFromDate();
+        this.toDate = criteria.getToDate();
+        this.changedAfter = criteria.getChangedAfter();
+        this.changedThrough = criteria.getChangedThrough();
+    }
+    
+    public int getDone() {
+        return done;
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public void setTotal(int total) {
+        this.total = total;
+    }
+    
+    public LocalDate getLastDate() {
+        return lastDate;
+    }
+    
+    public int getLastId() {
+        return lastId;
+    }
+    
+    public long getByteOffset() {
+        return byteOffset;
+    }
+    
+    // Records that everything up to and including this invoice is safely in the file
+    public void advance(int done, LocalDate lastDate, int lastId, long byteOffset) {
+        this.done = done;
+        this.lastDate = lastDate;
+        this.lastId = lastId;
+        this.byteOffset = byteOffset;
+    }
+}
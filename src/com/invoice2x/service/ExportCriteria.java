@@ -0,0 +1,146 @@
+package com.invoice2x.service;
+
+import java.time.LocalDate;
+
+
+ // Which invoices a streaming export reads. Unset bounds are open-ended.
+ 
+public class ExportCriteria {
+    
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private int fetchSize;
+    private LocalDate afterDate;
+    private int afterId;
+    private LocalDate throughDate;
+    private int throughId;
+    private String customerName;
+    private Long changedAfter;
+    private Long changedThrough;
+    
+    public ExportCriteria() {
+        this.fetchSize = DEFAULT_FETCH_SIZE;
+    }
+    
+    public static ExportCriteria dateRange(LocalDate fromDate, LocalDate toDate) {
+        ExportCriteria criteria = new ExportCriteria();
+        criteria.setFromDate(fromDate);
+        criteria.setToDate(toDate);
+        return criteria;
+    }
+    
+    // Invoices inserted or updated after change_seq changedAfter, up to and including changedThrough
+    public static ExportCriteria changes(long changedAfter, long changedThrough) {
+        ExportCriteria criteria = new ExportCriteria();
+        criteria.changedAfter = changedAfter;
+        criteria.changedThrough = changedThrough;
+        return criteria;
+    }
+    
+    // Same bounds, continuing after the given invoice in cursor order (newest first)
+    public ExportCriteria after(LocalDate invoiceDate, int invoiceId) {
+        ExportCriteria criteria = copy();
+        criteria.afterDate = invoiceDate;
+        criteria.afterId = invoiceId;
+        return criteria;
+    }
+    
+    // Same bounds, stopping after the given invoice (inclusive) in cursor order
+    public ExportCriteria through(LocalDate invoiceDate, int invoiceId) {
+        ExportCriteria criteria = copy();
+        criteria.throughDate = invoiceDate;
+        criteria.throughId = invoiceId;
+        return criteria;
+    }
+    
+    // Same bounds, narrowed to the dates both ranges share
+    public ExportCriteria within(LocalDate from, LocalDate to) {
+        ExportCriteria criteria = copy();
+        if (fromDate == null || from.isAfter(fromDate)) {
+            criteria.fromDate = from;
+        }
+        if (toDate == null || to.isBefore(toDate)) {
+            criteria.toDate = to;
+        }
+        return criteria;
+    }
+    
+    // Same bounds, only invoices for this customer (matched case-insensitively)
+    public ExportCriteria forCustomer(String customerName) {
+        ExportCriteria criteria = copy();
+        criteria.customerName = customerName;
+        return criteria;
+    }
+    
+    private ExportCriteria copy() {
+        ExportCriteria criteria = dateRange(fromDate, toDate);
+        criteria.fetchSize = fetchSize;
+        criteria.afterDate = afterDate;
+        criteria.afterId = afterId;
+        criteria.throughDate = throughDate;
+        criteria.throughId = throughId;
+        criteria.customerName = customerName;
+        criteria.changedAfter = changedAfter;
+        criteria.changedThrough = changedThrough;
+        return criteria;
+    }
+    
+    // Getters and Setters
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+    
+    // Inclusive
+    public void setFromDate(LocalDate fromDate) {
+        this.fromDate = fromDate;
+    }
+    
+    public LocalDate getToDate() {
+        return toDate;
+    }
+    
+    // Inclusive
+    public void setToDate(LocalDate toDate) {
+        this.toDate = toDate;
+    }
+    
+    public int getFetchSize() {
+        return fetchSize;
+    }
+    
+    // Rows the driver is asked to buffer per fetch
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+    
+    public LocalDate getAfterDate() {
+        return afterDate;
+    }
+    
+    public int getAfterId() {
+        return afterId;
+    }
+    
+    public LocalDate getThroughDate() {
+        return throughDate;
+    }
+    
+    public int getThroughId() {
+        return throughId;
+    }
+    
+    public String getCustomerName() {
+        return customerName;
+    }
+    
+    // Null unless this is an incremental export
+    public Long getChangedAfter() {
+        return changedAfter;
+    }
+    
+    public Long getChangedThrough() {
+        return changedThrough;
+    }
+}
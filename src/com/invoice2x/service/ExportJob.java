@@ -0,0 +1,376 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+ // One export run: what to read, how to write it, and where it stands.
+ // Database-backed jobs checkpoint as they go; text formats resume from the
+ // last checkpointed invoice, workbooks are rebuilt from the start.
+
+public class ExportJob {
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+    // Settings key holding the change_seq the last incremental export reached
+    public static final String HIGH_WATER_MARK_KEY = "export.incremental.change_seq";
+
+    private final int id;
+    private final String name;
+    private final ExportOptions options;
+    private final String filePath;
+    // Exactly one of criteria (database cursor) or invoices is set
+    private final ExportCriteria criteria;
+    private final List<Invoice> invoices;
+    private ExportCheckpoint resumeFrom;
+    private ExcelExportService.ExportProgressListener listener;
+    private Priority priority = Priority.NORMAL;
+
+    private volatile State state = State.QUEUED;
+    private volatile boolean cancelRequested;
+    // Shards of a split export count concurrently
+    private final AtomicInteger done = new AtomicInteger();
+    private volatile int total;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String errorMessage;
+
+    private ExportJob(String name, ExportOptions options, String filePath,
+                      ExportCriteria criteria, List<Invoice> invoices) {
+        this.id = NEXT_ID.getAndIncrement();
+        this.name = name;
+        this.options = options;
+        this.filePath = filePath;
+        this.criteria = criteria;
+        this.invoices = invoices;
+    }
+
+    public static ExportJob forCriteria(String name, ExportCriteria criteria,
+                                       ExportOptions options, String filePath) {
+        return new ExportJob(name, options, filePath, criteria, null);
+    }
+
+    public static ExportJob forInvoices(String name, List<Invoice> invoices,
+                                        ExportOptions options, String filePath) {
+        return new ExportJob(name, options, filePath, null, invoices);
+    }
+
+    // Everything inserted or updated since the last completed incremental export
+    public static ExportJob incremental(ExportOptions options, String filePath) throws SQLException {
+        DatabaseService db = DatabaseService.getInstance();
+        long through = db.getMaxChangeSeq();
+        long after = highWaterMark();
+        if (after > through) {
+            // The database was restored from an older copy; start again from the beginning
+            after = 0;
+        }
+        return forCriteria("Changes since last export", ExportCriteria.changes(after, through), options, filePath);
+    }
+
+    public static ExportJob resume(ExportCheckpoint checkpoint, ExportOptions options) {
+        options.setFormat(checkpoint.getFormat());
+        options.setShardMode(ExportOptions.ShardMode.NONE);
+        ExportJob job = new ExportJob("Resumed export", options, checkpoint.getFilePath(),
+                                      checkpoint.getCriteria(), null);
+        job.resumeFrom = checkpoint;
+        return job;
+    }
+
+    public void setListener(ExcelExportService.ExportProgressListener listener) {
+        this.listener = listener;
+    }
+
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    // Stops the job before its next invoice; the partial file is deleted
+    public void cancel() {
+        cancelRequested = true;
+        if (state == State.QUEUED) {
+            state = State.CANCELLED;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    // Runs the export on the calling thread
+    public void run() throws Exception {
+        if (cancelRequested) {
+            state = State.CANCELLED;
+            finishedAt = System.currentTimeMillis();
+            return;
+        }
+        state = State.RUNNING;
+        startedAt = System.currentTimeMillis();
+
+        // A checkpoint records one output file, so split exports are not resumable
+        boolean resumable = criteria != null && options.getShardMode() == ExportOptions.ShardMode.NONE;
+        ExportCheckpoint checkpoint = null;
+
+        try {
+            InvoiceExporter exporter = options.createExporter();
+            ExportCriteria readCriteria = criteria;
+            int base = 0;
+
+            if (resumable) {
+                checkpoint = resumeFrom;
+                boolean appending = checkpoint != null && checkpoint.hasPosition()
+                    && exporter instanceof TextInvoiceExporter && new File(filePath).exists();
+
+                if (appending) {
+                    readCriteria = criteria.after(checkpoint.getLastDate(), checkpoint.getLastId());
+                    base = checkpoint.getDone();
+                    ((TextInvoiceExporter) exporter).resumeAt(checkpoint.getByteOffset());
+                } else {
+                    checkpoint = new ExportCheckpoint();
+                    checkpoint.setFilePath(filePath);
+                    checkpoint.setFormat(options.getFormat());
+                    checkpoint.setCriteria(criteria);
+                }
+                checkpoint.setTotal(base + DatabaseService.getInstance().countInvoices(readCriteria));
+                checkpoint.save();
+
+                if (exporter instanceof TextInvoiceExporter) {
+                    ((TextInvoiceExporter) exporter).setCheckpointHandler(checkpointHandler(checkpoint));
+                }
+            }
+
+            InvoiceSource source = criteria != null ? InvoiceSource.fromDatabase(readCriteria) : InvoiceSource.of(invoices);
+            done.set(base);
+            total = base + source.size();
+
+            exporter.export(cancellable(source), filePath, progress(base));
+
+            // The next incremental export starts after what this one covered
+            if (criteria != null && criteria.getChangedThrough() != null
+                    && criteria.getChangedThrough() > highWaterMark()) {
+                DatabaseService.getInstance().setSetting(HIGH_WATER_MARK_KEY, String.valueOf(criteria.getChangedThrough()));
+            }
+            state = State.COMPLETED;
+            if (checkpoint != null) {
+                checkpoint.clear();
+            }
+
+        } catch (CancellationException e) {
+            state = State.CANCELLED;
+            new File(filePath).delete();
+            if (checkpoint != null) {
+                checkpoint.clear();
+            }
+
+        } catch (Exception e) {
+            // The checkpoint is kept so the export can be resumed
+            state = State.FAILED;
+            errorMessage = e.getMessage();
+            throw e;
+
+        } finally {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static long highWaterMark() throws SQLException {
+        String mark = DatabaseService.getInstance().getSetting(HIGH_WATER_MARK_KEY);
+        return mark != null ? Long.parseLong(mark) : 0;
+    }
+
+    private InvoiceSource cancellable(InvoiceSource source) {
+        return new InvoiceSource() {
+            @Override
+            public int size() throws Exception {
+                return source.size();
+            }
+
+            @Override
+            public void forEach(InvoiceHandler handler) throws Exception {
+                source.forEach(invoice -> {
+                    if (cancelRequested) {
+                        throw new CancellationException("Export cancelled");
+                    }
+                    done.incrementAndGet();
+                    handler.handle(invoice);
+                });
+            }
+
+            // Split exports read their shards, not this source, so each shard is wrapped too
+            @Override
+            public List<Shard> split(ExportOptions.ShardMode mode, int shardSize) throws Exception {
+                List<Shard> shards = new ArrayList<>();
+                for (Shard shard : source.split(mode, shardSize)) {
+                    shards.add(new Shard(shard.getLabel(), cancellable(shard.getSource()), shard.getSize()));
+                }
+                return shards;
+            }
+        };
+    }
+
+    private TextInvoiceExporter.CheckpointHandler checkpointHandler(ExportCheckpoint checkpoint) {
+        return new TextInvoiceExporter.CheckpointHandler() {
+            private long lastSaved = System.currentTimeMillis();
+
+            @Override
+            public boolean isDue() {
+                return System.currentTimeMillis() - lastSaved >= CHECKPOINT_INTERVAL_MS;
+            }
+
+            @Override
+            public void checkpoint(Invoice lastWritten, long byteOffset) throws Exception {
+                checkpoint.advance(done.get(), lastWritten.getInvoiceDate(), lastWritten.getId(), byteOffset);
+                checkpoint.save();
+                lastSaved = System.currentTimeMillis();
+            }
+        };
+    }
+
+    // Exporters count from zero; a resumed job reports progress over the whole export
+    private ExcelExportService.ExportProgressListener progress(int base) {
+        ExcelExportService.ExportProgressListener target = listener;
+        return new ExcelExportService.ExportProgressListener() {
+            @Override
+            public void onProgress(int current, int count, String message) {
+                if (target != null) {
+                    target.onProgress(base + current, base + count,
+                        base == 0 ? message : message + " (resumed at " + base + ")");
+                }
+            }
+
+            @Override
+            public void onComplete(String path) {
+                if (target != null) {
+                    target.onComplete(path);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (target != null) {
+                    target.onError(e);
+                }
+            }
+        };
+    }
+
+    // Getters
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public ExportOptions getOptions() {
+        return options;
+    }
+
+    // Null for jobs over a fixed list of invoices
+    public ExportCriteria getCriteria() {
+        return criteria;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getDone() {
+        return done.get();
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    // Time spent waiting for a free slot, up to now while still queued
+    public long getWaitMillis() {
+        long end = startedAt != 0 ? startedAt : (finishedAt != 0 ? finishedAt : System.currentTimeMillis());
+        return end - createdAt;
+    }
+
+    // Time spent exporting, up to now while still running
+    public long getRunMillis() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+    }
+
+
+    public enum State {
+        QUEUED("Queued"),
+        RUNNING("Running"),
+        COMPLETED("Completed"),
+        CANCELLED("Cancelled"),
+        FAILED("Failed");
+
+        private final String displayName;
+
+        State(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == CANCELLED || this == FAILED;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+
+    public enum Priority {
+        HIGH("High"),
+        NORMAL("Normal"),
+        LOW("Low");
+
+        private final String displayName;
+
+        Priority(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+}
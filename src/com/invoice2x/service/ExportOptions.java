@@ -0,0 +1,240 @@
+package com.invoice2x.service;
+
+import com.invoice2x.util.ConfigManager;
+
+
+ // How an export is written: its format, whether the workbook is built in memory or
+ // streamed through SXSSF, and whether the output is split into shards
+ 
+public class ExportOptions {
+    
+    public static final int DEFAULT_ROW_WINDOW = 100;
+    public static final int DEFAULT_SHARD_SIZE = 1000;
+    
+    private Format format;
+    private boolean streaming;
+    private int rowWindow;
+    private boolean compressTempFiles;
+    private int parallelism;
+    private ShardMode shardMode;
+    private int shardSize;
+    private boolean zipShards;
+    private String templateFile;
+    
+    public ExportOptions() {
+        this.format = Format.SHEET_PER_INVOICE;
+        this.streaming = true;
+        this.rowWindow = DEFAULT_ROW_WINDOW;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.shardMode = ShardMode.NONE;
+        this.shardSize = DEFAULT_SHARD_SIZE;
+        this.zipShards = true;
+        this.templateFile = "";
+    }
+    
+    public static ExportOptions fromConfig(ConfigManager config) {
+        ExportOptions options = new ExportOptions();
+        options.setFormat(Format.fromName(config.getProperty("export.format", Format.SHEET_PER_INVOICE.name())));
+        options.setStreaming(config.getBooleanProperty("export.streaming", true));
+        options.setRowWindow(config.getIntProperty("export.row_window", DEFAULT_ROW_WINDOW));
+        options.setCompressTempFiles(config.getBooleanProperty("export.compress_temp_files", false));
+        int threads = config.getIntProperty("export.threads", 0);
+        if (threads > 0) {
+            options.setParallelism(threads);
+        }
+        options.setShardMode(ShardMode.fromName(config.getProperty("export.shard_by", ShardMode.NONE.name())));
+        options.setShardSize(config.getIntProperty("export.shard_size", DEFAULT_SHARD_SIZE));
+        options.setZipShards(config.getBooleanProperty("export.zip_shards", true));
+        options.setTemplateFile(config.getProperty("export.template_file", ""));
+        return options;
+    }
+    
+    // Picks the exporter for the selected format
+    public InvoiceExporter createExporter() {
+        if (shardMode != ShardMode.NONE) {
+            return new ShardedExporter(this);
+        }
+        switch (format) {
+            case CSV:
+                return new CsvInvoiceExporter();
+            case JSON_LINES:
+                return new JsonLinesInvoiceExporter();
+            default:
+                return (source, filePath, listener) -> 
+                    ExcelExportService.getInstance().export(source, filePath, this, listener);
+        }
+    }
+    
+    // The same settings for writing one shard of a split export
+    ExportOptions forShard() {
+        ExportOptions options = new ExportOptions();
+        options.format = format;
+        options.streaming = streaming;
+        options.rowWindow = rowWindow;
+        options.compressTempFiles = compressTempFiles;
+        options.templateFile = templateFile;
+        // Shards are the unit of parallelism; each one is written on a single thread
+        options.parallelism = 1;
+        return options;
+    }
+    
+    // Extension of the file the exporter produces: a ZIP when shards are bundled
+    public String getOutputExtension() {
+        return shardMode != ShardMode.NONE && zipShards ? "zip" : format.getExtension();
+    }
+    
+    // Getters and Setters
+    public Format getFormat() {
+        return format;
+    }
+    
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+    
+    public boolean isStreaming() {
+        return streaming;
+    }
+    
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+    
+    // Rows kept in memory per sheet before older ones are flushed to a temp file
+    public int getRowWindow() {
+        return rowWindow;
+    }
+    
+    public void setRowWindow(int rowWindow) {
+        this.rowWindow = Math.max(1, rowWindow);
+    }
+    
+    // Gzip the temp files; smaller on disk at some CPU cost
+    public boolean isCompressTempFiles() {
+        return compressTempFiles;
+    }
+    
+    public void setCompressTempFiles(boolean compressTempFiles) {
+        this.compressTempFiles = compressTempFiles;
+    }
+    
+    // Threads building sheet layouts; 1 builds them on the exporting thread
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+    
+    // NONE writes one file; anything else writes one file per shard
+    public ShardMode getShardMode() {
+        return shardMode;
+    }
+    
+    public void setShardMode(ShardMode shardMode) {
+        this.shardMode = shardMode;
+    }
+    
+    // Invoices per shard when splitting by count
+    public int getShardSize() {
+        return shardSize;
+    }
+    
+    public void setShardSize(int shardSize) {
+        this.shardSize = Math.max(1, shardSize);
+    }
+    
+    // Bundle the shards into one ZIP instead of leaving them next to each other
+    public boolean isZipShards() {
+        return zipShards;
+    }
+    
+    public void setZipShards(boolean zipShards) {
+        this.zipShards = zipShards;
+    }
+    
+    // Branded .xlsx whose first sheet every invoice sheet is stamped from; empty for the built-in layout
+    public String getTemplateFile() {
+        return templateFile;
+    }
+    
+    public void setTemplateFile(String templateFile) {
+        this.templateFile = templateFile != null ? templateFile.trim() : "";
+    }
+    
+    
+    public enum Format {
+        SHEET_PER_INVOICE("One sheet per invoice", "xlsx"),
+        // Flat Invoices + Line Items sheets; always streamed, suits bulk exports
+        LEDGER("Ledger (invoices + line items)", "xlsx"),
+        CSV("CSV (one row per line item)", "csv"),
+        JSON_LINES("JSON Lines (one invoice per line)", "jsonl");
+        
+        private final String displayName;
+        private final String extension;
+        
+        Format(String displayName, String extension) {
+            this.displayName = displayName;
+            this.extension = extension;
+        }
+        
+        public static Format fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown export format: " + name);
+                return SHEET_PER_INVOICE;
+            }
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+        
+        public boolean isSpreadsheet() {
+            return "xlsx".equals(extension);
+        }
+        
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+    
+    
+    public enum ShardMode {
+        NONE("Single file"),
+        COUNT("By invoice count"),
+        MONTH("By month"),
+        CUSTOMER("By customer");
+        
+        private final String displayName;
+        
+        ShardMode(String displayName) {
+            this.displayName = displayName;
+        }
+        
+        public static ShardMode fromName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown export shard mode: " + name);
+                return NONE;
+            }
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+        
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+}
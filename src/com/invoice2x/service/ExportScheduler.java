@@ -0,0 +1,150 @@
+package com.invoice2x.service;
+
+import com.invoice2x.util.ConfigManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+ // Runs export jobs in the background: up to export.concurrency at a time,
+ // the rest waiting in a bounded queue ordered by priority, then submission order
+
+public class ExportScheduler {
+
+    private static ExportScheduler instance;
+    // Finished jobs kept for the jobs view; older ones are dropped
+    private static final int HISTORY_LIMIT = 50;
+
+    private final ThreadPoolExecutor executor;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final List<ExportJob> jobs = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ExportScheduler() {
+        ConfigManager config = ConfigManager.getInstance();
+        concurrency = Math.max(1, config.getIntProperty("export.concurrency", 2));
+        queueCapacity = Math.max(1, config.getIntProperty("export.queue_capacity", 20));
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "export-job");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    public static synchronized ExportScheduler getInstance() {
+        if (instance == null) {
+            instance = new ExportScheduler();
+        }
+        return instance;
+    }
+
+    // Queues the job; throws RejectedExecutionException when the queue is full
+    // or another unfinished job is already writing the same file
+    public synchronized void submit(ExportJob job) {
+        int queued = 0;
+        for (ExportJob other : jobs) {
+            if (other.getState() == ExportJob.State.QUEUED) {
+                queued++;
+            }
+        }
+        if (isInProgress(job.getFilePath())) {
+            throw new RejectedExecutionException("An export to " + job.getFilePath() + " is already in progress");
+        }
+        if (queued >= queueCapacity) {
+            throw new RejectedExecutionException("Export queue is full (" + queueCapacity + " jobs waiting)");
+        }
+
+        // Jobs share the machine, so each gets its slice of the layout threads
+        ExportOptions options = job.getOptions();
+        int share = Math.max(1, Runtime.getRuntime().availableProcessors() / concurrency);
+        options.setParallelism(Math.min(options.getParallelism(), share));
+
+        jobs.add(job);
+        trimHistory();
+        executor.execute(new QueuedJob(job, sequence.getAndIncrement()));
+    }
+
+    // True while a queued or running job is writing to filePath
+    public boolean isInProgress(String filePath) {
+        for (ExportJob job : jobs) {
+            if (!job.getState().isFinished() && job.getFilePath().equals(filePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Newest first
+    public List<ExportJob> getJobs() {
+        List<ExportJob> snapshot = new ArrayList<>(jobs);
+        Collections.reverse(snapshot);
+        return snapshot;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    private synchronized void trimHistory() {
+        int finished = 0;
+        for (ExportJob job : jobs) {
+            if (job.getState().isFinished()) {
+                finished++;
+            }
+        }
+        for (ExportJob job : jobs) {
+            if (finished <= HISTORY_LIMIT) {
+                break;
+            }
+            if (job.getState().isFinished()) {
+                jobs.remove(job);
+                finished--;
+            }
+        }
+    }
+
+
+
+    private class QueuedJob implements Runnable, Comparable<QueuedJob> {
+        private final ExportJob job;
+        private final long sequence;
+
+        QueuedJob(ExportJob job, long sequence) {
+            this.job = job;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            if (job.getState().isFinished()) {
+                // Cancelled while it was waiting
+                return;
+            }
+            try {
+                job.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                trimHistory();
+            }
+        }
+
+        @Override
+        public int compareTo(QueuedJob other) {
+            int byPriority = job.getPriority().compareTo(other.job.getPriority());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
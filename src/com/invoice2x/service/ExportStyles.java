@@ -0,0 +1,115 @@
+package com.invoice2x.service;
+
+import org.apache.poi.ss.usermodel.*;
+
+
+ // Cell styles for one export workbook, created once and shared by every sheet.
+ // Workbooks cap the number of distinct styles, so never create them per sheet.
+ 
+public class ExportStyles {
+    
+    private final CellStyle header;
+    private final CellStyle bold;
+    private final CellStyle currency;
+    private final CellStyle tableHeader;
+    private final CellStyle tableCell;
+    private final CellStyle total;
+    private final CellStyle date;
+    
+    public ExportStyles(Workbook workbook) {
+        DataFormat format = workbook.createDataFormat();
+        short currencyFormat = format.getFormat("$#,##0.00");
+        
+        Font boldFont = workbook.createFont();
+        boldFont.setBold(true);
+        
+        Font headerFont = workbook.createFont();
+        headerFont.setBold(true);
+        headerFont.setFontHeightInPoints((short) 18);
+        
+        Font totalFont = workbook.createFont();
+        totalFont.setBold(true);
+        totalFont.setFontHeightInPoints((short) 13);
+        
+        header = workbook.createCellStyle();
+        header.setFont(headerFont);
+        
+        bold = workbook.createCellStyle();
+        bold.setFont(boldFont);
+        
+        currency = workbook.createCellStyle();
+        currency.setDataFormat(currencyFormat);
+        
+        tableHeader = workbook.createCellStyle();
+        tableHeader.setFont(boldFont);
+        tableHeader.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        tableHeader.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        setThinBorders(tableHeader);
+        
+        tableCell = workbook.createCellStyle();
+        setThinBorders(tableCell);
+        
+        total = workbook.createCellStyle();
+        total.setFont(totalFont);
+        total.setDataFormat(currencyFormat);
+        
+        date = workbook.createCellStyle();
+        date.setDataFormat(format.getFormat("yyyy-mm-dd"));
+    }
+    
+    private static void setThinBorders(CellStyle style) {
+        style.setBorderBottom(BorderStyle.THIN);
+        style.setBorderTop(BorderStyle.THIN);
+        style.setBorderLeft(BorderStyle.THIN);
+        style.setBorderRight(BorderStyle.THIN);
+    }
+    
+    public CellStyle get(SheetLayout.StyleKey key) {
+        switch (key) {
+            case HEADER:
+                return header;
+            case BOLD:
+                return bold;
+            case CURRENCY:
+                return currency;
+            case TABLE_HEADER:
+                return tableHeader;
+            case TABLE_CELL:
+                return tableCell;
+            case TOTAL:
+                return total;
+            case DATE:
+                return date;
+            default:
+                return null;
+        }
+    }
+    
+    public CellStyle getHeader() {
+        return header;
+    }
+    
+    public CellStyle getBold() {
+        return bold;
+    }
+    
+    public CellStyle getCurrency() {
+        return currency;
+    }
+    
+    public CellStyle getTableHeader() {
+        return tableHeader;
+    }
+    
+    public CellStyle getTableCell() {
+        return tableCell;
+    }
+    
+    public CellStyle getTotal() {
+        return total;
+    }
+    
+    public CellStyle getDate() {
+        return date;
+    }
+}
@@ -0,0 +1,89 @@
+package com.invoice2x.service;
+
+import java.io.File;
+
+
+ // Counts for one import run, updated as it goes; a listener sees the running totals
+
+public class ImportResult {
+
+    private final File file;
+    private final long startedAt = System.nanoTime();
+    private volatile long finishedAt;
+    private volatile int rowsRead;
+    private volatile int invoicesImported;
+    private volatile int invoicesRejected;
+    private volatile int rowsRejected;
+    // Set once the first rejected row has been written
+    private volatile File errorFile;
+
+    ImportResult(File file) {
+        this.file = file;
+    }
+
+    void rowRead() {
+        rowsRead++;
+    }
+
+    void imported(int invoices) {
+        invoicesImported += invoices;
+    }
+
+    void rejected(int rows) {
+        invoicesRejected++;
+        rowsRejected += rows;
+    }
+
+    void setErrorFile(File errorFile) {
+        this.errorFile = errorFile;
+    }
+
+    void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getInvoicesImported() {
+        return invoicesImported;
+    }
+
+    public int getInvoicesRejected() {
+        return invoicesRejected;
+    }
+
+    public int getRowsRejected() {
+        return rowsRejected;
+    }
+
+    // Null when every row was imported
+    public File getErrorFile() {
+        return errorFile;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != 0;
+    }
+
+    // Up to now while still running
+    public long getElapsedMillis() {
+        return ((finishedAt != 0 ? finishedAt : System.nanoTime()) - startedAt) / 1_000_000;
+    }
+
+    public double getRowsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : rowsRead * 1000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d rows read, %,d invoices imported, %,d rejected (%,d rows), %,.0f rows/s",
+            rowsRead, invoicesImported, invoicesRejected, rowsRejected, getRowsPerSecond());
+    }
+}
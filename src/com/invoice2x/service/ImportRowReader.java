@@ -0,0 +1,31 @@
+package com.invoice2x.service;
+
+import java.io.File;
+import java.util.List;
+
+
+ // Rows of a tabular import file, handed over one at a time so a large file is
+ // never held in memory. The first row delivered is the header row.
+
+public interface ImportRowReader {
+
+    void read(RowHandler handler) throws Exception;
+
+    // Picks the reader by file extension
+    static ImportRowReader forFile(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return new CsvRowReader(file);
+        }
+        if (name.endsWith(".xlsx")) {
+            return new XlsxRowReader(file);
+        }
+        throw new IllegalArgumentException("Unsupported import file (expected .csv or .xlsx): " + file.getName());
+    }
+
+
+    interface RowHandler {
+        // rowNumber counts from 1 at the header row; blank rows are skipped but still counted
+        void row(int rowNumber, List<String> cells) throws Exception;
+    }
+}
@@ -0,0 +1,448 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceItem;
+import com.invoice2x.util.ConfigManager;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+ // Bulk import from CSV or XLSX laid out like the CSV export: one row per line item with the
+ // invoice columns repeated, consecutive rows with the same invoice_number forming one invoice
+ // (a row without a number is an invoice of its own and gets the next number of the year).
+ // Batches are validated in parallel and inserted in input order, one transaction per batch.
+ // A rejected invoice is skipped and its rows go to <file>.errors.csv with the reason.
+
+public class ImportService {
+
+    private static ImportService instance;
+
+    private static final String[] REQUIRED_COLUMNS = {"invoice_date", "customer_name"};
+    private static final int DEFAULT_DUE_DAYS = 30;
+
+    private ImportService() {
+    }
+
+    public static synchronized ImportService getInstance() {
+        if (instance == null) {
+            instance = new ImportService();
+        }
+        return instance;
+    }
+
+    // Batch size and validation threads from import.batch_size and import.threads (0 = one per core)
+    public ImportResult importFile(File file, ImportListener listener) throws Exception {
+        ConfigManager config = ConfigManager.getInstance();
+        int batchSize = config.getIntProperty("import.batch_size", 500);
+        int threads = config.getIntProperty("import.threads", 0);
+        return importFile(file, batchSize, threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    public ImportResult importFile(File file, int batchSize, int threads, ImportListener listener) throws Exception {
+        ImportRowReader reader = ImportRowReader.forFile(file);
+        ExecutorService validators = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "import-validate");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ImportRun run = new ImportRun(file, Math.max(1, batchSize), Math.max(1, threads), validators, listener);
+        try {
+            reader.read(run);
+            run.finish();
+            return run.result;
+        } finally {
+            validators.shutdownNow();
+            run.closeErrorFile();
+            run.result.finish();
+        }
+    }
+
+    public static File errorFileFor(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(file.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".errors.csv");
+    }
+
+
+    // State of one import: the reader feeds rows in, this thread also writes the validated batches
+    private static class ImportRun implements ImportRowReader.RowHandler {
+        private final ImportResult result;
+        private final int batchSize;
+        private final ExecutorService validators;
+        // Bounds how many validated batches wait in memory for the writer
+        private final int window;
+        private final ImportListener listener;
+        private final DatabaseService db = DatabaseService.getInstance();
+
+        private List<String> headers;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private List<SourceRow> group = new ArrayList<>();
+        private String groupNumber;
+        private List<List<SourceRow>> batch = new ArrayList<>();
+        private final Deque<Future<List<ParsedInvoice>>> inFlight = new ArrayDeque<>();
+        // Numbers imported so far, to catch an invoice that appears twice in the file
+        private final Set<String> seenNumbers = new HashSet<>();
+        private Writer errors;
+
+        ImportRun(File file, int batchSize, int threads, ExecutorService validators, ImportListener listener) {
+            this.result = new ImportResult(file);
+            this.batchSize = batchSize;
+            this.validators = validators;
+            this.window = threads * 2;
+            this.listener = listener;
+        }
+
+        @Override
+        public void row(int rowNumber, List<String> cells) throws Exception {
+            if (headers == null) {
+                readHeaders(cells);
+                return;
+            }
+            result.rowRead();
+            String number = cell(columns, cells, "invoice_number");
+            if (!group.isEmpty() && (number.isEmpty() || !number.equals(groupNumber))) {
+                endGroup();
+            }
+            group.add(new SourceRow(rowNumber, cells));
+            groupNumber = number;
+        }
+
+        private void readHeaders(List<String> cells) {
+            headers = cells;
+            for (int i = 0; i < cells.size(); i++) {
+                // "Invoice Date" and "invoice_date" name the same column
+                columns.putIfAbsent(cells.get(i).trim().toLowerCase().replace(' ', '_'), i);
+            }
+            for (String required : REQUIRED_COLUMNS) {
+                if (!columns.containsKey(required)) {
+                    throw new IllegalArgumentException("The header row has no " + required + " column");
+                }
+            }
+        }
+
+        private void endGroup() throws Exception {
+            batch.add(group);
+            group = new ArrayList<>();
+            if (batch.size() >= batchSize) {
+                submitBatch();
+            }
+        }
+
+        private void submitBatch() throws Exception {
+            List<List<SourceRow>> groups = batch;
+            batch = new ArrayList<>();
+            inFlight.add(validators.submit(() -> validate(groups)));
+            if (inFlight.size() >= window) {
+                write(awaitBatch(inFlight.poll()));
+            }
+        }
+
+        void finish() throws Exception {
+            if (headers == null) {
+                throw new IllegalArgumentException("The file is empty");
+            }
+            if (!group.isEmpty()) {
+                endGroup();
+            }
+            if (!batch.isEmpty()) {
+                submitBatch();
+            }
+            while (!inFlight.isEmpty()) {
+                write(awaitBatch(inFlight.poll()));
+            }
+        }
+
+        private List<ParsedInvoice> validate(List<List<SourceRow>> groups) {
+            List<ParsedInvoice> parsed = new ArrayList<>(groups.size());
+            for (List<SourceRow> rows : groups) {
+                ParsedInvoice invoice = new ParsedInvoice(rows);
+                try {
+                    invoice.invoice = parseInvoice(columns, rows);
+                } catch (IllegalArgumentException e) {
+                    invoice.error = e.getMessage();
+                }
+                parsed.add(invoice);
+            }
+            return parsed;
+        }
+
+        // Runs on this thread only, batch by batch in file order
+        private void write(List<ParsedInvoice> parsed) throws Exception {
+            List<ParsedInvoice> valid = new ArrayList<>();
+            List<String> numbers = new ArrayList<>();
+            int unnumbered = 0;
+            for (ParsedInvoice p : parsed) {
+                String number = p.invoice != null ? p.invoice.getInvoiceNumber() : null;
+                if (p.error != null) {
+                    reject(p, p.error);
+                } else if (number == null) {
+                    valid.add(p);
+                    unnumbered++;
+                } else if (!seenNumbers.add(number)) {
+                    reject(p, "Invoice number " + number + " appears more than once in the file");
+                } else {
+                    valid.add(p);
+                    numbers.add(number);
+                }
+            }
+
+            Set<String> existing = numbers.isEmpty() ? Collections.emptySet() : db.findExistingInvoiceNumbers(numbers);
+            if (!existing.isEmpty()) {
+                List<ParsedInvoice> fresh = new ArrayList<>();
+                for (ParsedInvoice p : valid) {
+                    if (existing.contains(p.invoice.getInvoiceNumber())) {
+                        reject(p, "Invoice number " + p.invoice.getInvoiceNumber() + " already exists");
+                    } else {
+                        fresh.add(p);
+                    }
+                }
+                valid = fresh;
+            }
+
+            if (unnumbered > 0) {
+                InvoiceNumberBlock block = db.reserveInvoiceNumbers(LocalDate.now().getYear(), unnumbered);
+                for (ParsedInvoice p : valid) {
+                    if (p.invoice.getInvoiceNumber() == null) {
+                        p.invoice.setInvoiceNumber(block.next());
+                    }
+                }
+            }
+
+            List<Invoice> invoices = new ArrayList<>(valid.size());
+            for (ParsedInvoice p : valid) {
+                invoices.add(p.invoice);
+            }
+            try {
+                result.imported(db.insertInvoices(invoices));
+            } catch (SQLException e) {
+                // Retry one by one so only the invoices the database refuses are rejected
+                for (ParsedInvoice p : valid) {
+                    try {
+                        result.imported(db.insertInvoices(Collections.singletonList(p.invoice)));
+                    } catch (SQLException single) {
+                        reject(p, "Database: " + single.getMessage());
+                    }
+                }
+            }
+
+            if (listener != null) {
+                listener.onProgress(result);
+            }
+        }
+
+        private void reject(ParsedInvoice p, String reason) throws IOException {
+            if (errors == null) {
+                File errorFile = errorFileFor(result.getFile());
+                errors = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(errorFile), StandardCharsets.UTF_8));
+                writeCsvRow(errors, headers, "row", "error");
+                result.setErrorFile(errorFile);
+            }
+            for (SourceRow row : p.rows) {
+                writeCsvRow(errors, row.cells, String.valueOf(row.number), reason);
+            }
+            result.rejected(p.rows.size());
+        }
+
+        void closeErrorFile() throws IOException {
+            if (errors != null) {
+                errors.close();
+                errors = null;
+            }
+        }
+    }
+
+    private static List<ParsedInvoice> awaitBatch(Future<List<ParsedInvoice>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    // Invoice columns come from the first row of the group; each row with item columns adds a line item
+    private static Invoice parseInvoice(Map<String, Integer> columns, List<SourceRow> rows) {
+        List<String> first = rows.get(0).cells;
+        Invoice invoice = new Invoice();
+
+        String number = cell(columns, first, "invoice_number");
+        invoice.setInvoiceNumber(number.isEmpty() ? null : number);
+        invoice.setCustomerName(required(columns, first, "customer_name"));
+        invoice.setCustomerEmail(optional(columns, first, "customer_email"));
+        invoice.setCustomerAddress(optional(columns, first, "customer_address"));
+        invoice.setNotes(optional(columns, first, "notes"));
+
+        LocalDate invoiceDate = parseDate("invoice_date", required(columns, first, "invoice_date"));
+        String due = cell(columns, first, "due_date");
+        invoice.setInvoiceDate(invoiceDate);
+        invoice.setDueDate(due.isEmpty() ? invoiceDate.plusDays(DEFAULT_DUE_DAYS) : parseDate("due_date", due));
+
+        String status = cell(columns, first, "status");
+        invoice.setStatus(status.isEmpty() ? Invoice.InvoiceStatus.DRAFT : parseStatus(status));
+
+        BigDecimal itemsTotal = BigDecimal.ZERO;
+        for (SourceRow row : rows) {
+            String description = cell(columns, row.cells, "description");
+            String quantity = cell(columns, row.cells, "quantity");
+            String unitPrice = cell(columns, row.cells, "unit_price");
+            String lineTotal = cell(columns, row.cells, "line_total");
+            if (description.isEmpty() && quantity.isEmpty() && unitPrice.isEmpty() && lineTotal.isEmpty()) {
+                continue;
+            }
+            if (description.isEmpty()) {
+                throw new IllegalArgumentException("Row " + row.number + ": description is empty");
+            }
+
+            InvoiceItem item = new InvoiceItem(description, parseAmount("quantity", quantity), parseAmount("unit_price", unitPrice));
+            if (!lineTotal.isEmpty()) {
+                BigDecimal given = parseAmount("line_total", lineTotal);
+                if (given.compareTo(item.getTotal()) != 0) {
+                    throw new IllegalArgumentException("Row " + row.number + ": line_total " + lineTotal +
+                        " is not quantity x unit_price (" + item.getTotal() + ")");
+                }
+            }
+            invoice.addItem(item);
+            itemsTotal = itemsTotal.add(item.getTotal());
+        }
+
+        // Stated amounts must agree with the items; missing ones are derived from them
+        String subtotalText = cell(columns, first, "subtotal");
+        BigDecimal subtotal = subtotalText.isEmpty() ? itemsTotal : parseAmount("subtotal", subtotalText);
+        if (!invoice.getItems().isEmpty() && subtotal.compareTo(itemsTotal) != 0) {
+            throw new IllegalArgumentException("subtotal " + subtotal + " is not the sum of the line items (" + itemsTotal + ")");
+        }
+        String taxText = cell(columns, first, "tax");
+        BigDecimal tax = taxText.isEmpty() ? BigDecimal.ZERO : parseAmount("tax", taxText);
+        String totalText = cell(columns, first, "total");
+        BigDecimal total = totalText.isEmpty() ? subtotal.add(tax) : parseAmount("total", totalText);
+        if (total.compareTo(subtotal.add(tax)) != 0) {
+            throw new IllegalArgumentException("total " + total + " is not subtotal + tax (" + subtotal.add(tax) + ")");
+        }
+
+        invoice.setSubtotal(subtotal.setScale(2, RoundingMode.HALF_UP));
+        invoice.setTax(tax.setScale(2, RoundingMode.HALF_UP));
+        invoice.setTotal(total.setScale(2, RoundingMode.HALF_UP));
+        return invoice;
+    }
+
+    private static String cell(Map<String, Integer> columns, List<String> cells, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= cells.size()) {
+            return "";
+        }
+        return cells.get(index).trim();
+    }
+
+    private static String optional(Map<String, Integer> columns, List<String> cells, String column) {
+        String value = cell(columns, cells, column);
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String required(Map<String, Integer> columns, List<String> cells, String column) {
+        String value = cell(columns, cells, column);
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException(column + " is empty");
+        }
+        return value;
+    }
+
+    private static LocalDate parseDate(String column, String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(column + " '" + value + "' is not a date (expected yyyy-mm-dd)");
+        }
+    }
+
+    private static BigDecimal parseAmount(String column, String value) {
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " '" + value + "' is not a number");
+        }
+    }
+
+    // The enum name as the exports write it, or the display name
+    private static Invoice.InvoiceStatus parseStatus(String value) {
+        for (Invoice.InvoiceStatus status : Invoice.InvoiceStatus.values()) {
+            if (status.name().equalsIgnoreCase(value) || status.getDisplayName().equalsIgnoreCase(value)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("status '" + value + "' is not one of " + Arrays.toString(Invoice.InvoiceStatus.values()));
+    }
+
+    // Quoted the way CsvInvoiceExporter does it
+    private static void writeCsvRow(Writer out, List<String> cells, String... extra) throws IOException {
+        List<String> values = new ArrayList<>(cells);
+        Collections.addAll(values, extra);
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = values.get(i);
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write("\r\n");
+    }
+
+
+    private static class SourceRow {
+        private final int number;
+        private final List<String> cells;
+
+        SourceRow(int number, List<String> cells) {
+            this.number = number;
+            this.cells = cells;
+        }
+    }
+
+
+    // One group of rows and either the invoice built from it or the reason it was rejected
+    private static class ParsedInvoice {
+        private final List<SourceRow> rows;
+        private Invoice invoice;
+        private String error;
+
+        ParsedInvoice(List<SourceRow> rows) {
+            this.rows = rows;
+        }
+    }
+
+
+    public interface ImportListener {
+        // Called after each batch, on the importing thread
+        void onProgress(ImportResult progress);
+    }
+}
@@ -0,0 +1,163 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceItem;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+ // LRU cache of fully loaded invoices, keyed by id with a second index by invoice number.
+ // Bounded by entry count and by an estimate of the bytes held. Callers edit the
+ // invoices they get back, so copies go in and copies come out.
+
+public class InvoiceCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    // Access order: iteration starts at the least recently used invoice
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> idsByNumber = new HashMap<>();
+    private long bytes;
+    // Bumped by every invalidation; a load that started before the bump is not cached
+    private long version;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // maxEntries 0 disables the cache
+    public InvoiceCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public synchronized Invoice get(int id) {
+        return copyOf(entries.get(id));
+    }
+
+    public synchronized Invoice get(String invoiceNumber) {
+        Integer id = idsByNumber.get(invoiceNumber);
+        return copyOf(id != null ? entries.get(id) : null);
+    }
+
+    // Take this before reading the invoice from the database and pass it to put()
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // Caches a copy, unless the invoice was invalidated while it was being loaded
+    public synchronized void put(Invoice invoice, long loadedAtVersion) {
+        if (maxEntries == 0 || loadedAtVersion != version) {
+            return;
+        }
+        Entry entry = new Entry(invoice.copy(), estimateBytes(invoice));
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        remove(invoice.getId());
+        entries.put(invoice.getId(), entry);
+        idsByNumber.put(invoice.getInvoiceNumber(), invoice.getId());
+        bytes += entry.bytes;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            idsByNumber.remove(evicted.invoice.getInvoiceNumber(), evicted.invoice.getId());
+            bytes -= evicted.bytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void invalidate(Collection<Integer> ids) {
+        version++;
+        for (Integer id : ids) {
+            remove(id);
+        }
+    }
+
+    public synchronized void clear() {
+        version++;
+        entries.clear();
+        idsByNumber.clear();
+        bytes = 0;
+    }
+
+    private void remove(int id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            idsByNumber.remove(entry.invoice.getInvoiceNumber(), id);
+            bytes -= entry.bytes;
+        }
+    }
+
+    private Invoice copyOf(Entry entry) {
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.invoice.copy();
+    }
+
+    // Rough heap footprint: fixed overhead per object plus two bytes per character
+    private static long estimateBytes(Invoice invoice) {
+        long size = 240 + chars(invoice.getInvoiceNumber()) + chars(invoice.getCustomerName())
+            + chars(invoice.getCustomerEmail()) + chars(invoice.getCustomerAddress()) + chars(invoice.getNotes());
+        for (InvoiceItem item : invoice.getItems()) {
+            size += 160 + chars(item.getDescription());
+        }
+        return size;
+    }
+
+    private static long chars(String value) {
+        return value != null ? 40 + 2L * value.length() : 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // Hits over all lookups, 0 before the first one
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f%% hits (%d of %d lookups), %d invoices, %d KB, %d evicted",
+            getHitRate() * 100, getHits(), getHits() + getMisses(), size(), getBytes() / 1024, getEvictions());
+    }
+
+
+    private static class Entry {
+        private final Invoice invoice;
+        private final long bytes;
+
+        Entry(Invoice invoice, long bytes) {
+            this.invoice = invoice;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.invoice2x.service;
+
+
+ // Writes a stream of invoices to one output file in a particular format
+ 
+public interface InvoiceExporter {
+    
+    void export(InvoiceSource source, String filePath, 
+                ExcelExportService.ExportProgressListener listener) throws Exception;
+}
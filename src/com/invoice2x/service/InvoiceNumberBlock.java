@@ -0,0 +1,44 @@
+package com.invoice2x.service;
+
+import java.util.NoSuchElementException;
+
+
+ // A run of invoice numbers reserved in one step, for bulk inserts that should not touch
+ // the year's counter once per invoice. Numbers left unused when the block is dropped are skipped.
+
+public class InvoiceNumberBlock {
+
+    private final int year;
+    private long next;
+    private final long end;
+
+    InvoiceNumberBlock(int year, long first, int count) {
+        this.year = year;
+        this.next = first;
+        this.end = first + count;
+    }
+
+    // INV-<year>-<value>, padded to four digits
+    static String format(int year, long value) {
+        return String.format("INV-%d-%04d", year, value);
+    }
+
+    public synchronized boolean hasNext() {
+        return next < end;
+    }
+
+    public synchronized String next() {
+        if (next >= end) {
+            throw new NoSuchElementException("Invoice number block for " + year + " is used up");
+        }
+        return format(year, next++);
+    }
+
+    public synchronized int remaining() {
+        return (int) (end - next);
+    }
+
+    public int getYear() {
+        return year;
+    }
+}
@@ -0,0 +1,102 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceSummary;
+
+
+ // Search, filter, sort and keyset-page criteria for invoice list queries
+ 
+public class InvoiceQuery {
+    
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    
+    private String searchTerm;
+    private Invoice.InvoiceStatus status;
+    private SortOrder sortOrder;
+    private int pageSize;
+    private InvoiceSummary after;
+    
+    public InvoiceQuery() {
+        this.sortOrder = SortOrder.NEWEST_FIRST;
+        this.pageSize = DEFAULT_PAGE_SIZE;
+    }
+    
+    // Getters and Setters
+    public String getSearchTerm() {
+        return searchTerm;
+    }
+    
+    public void setSearchTerm(String searchTerm) {
+        this.searchTerm = searchTerm;
+    }
+    
+    public Invoice.InvoiceStatus getStatus() {
+        return status;
+    }
+    
+    // null matches every status
+    public void setStatus(Invoice.InvoiceStatus status) {
+        this.status = status;
+    }
+    
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+    
+    public void setSortOrder(SortOrder sortOrder) {
+        this.sortOrder = sortOrder;
+    }
+    
+    public int getPageSize() {
+        return pageSize;
+    }
+    
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+    
+    public InvoiceSummary getAfter() {
+        return after;
+    }
+    
+    // Keyset cursor: the last row of the previous page, or null for the first page
+    public void setAfter(InvoiceSummary after) {
+        this.after = after;
+    }
+    
+    
+    public enum SortOrder {
+        NEWEST_FIRST("Newest first", "invoice_date", false),
+        OLDEST_FIRST("Oldest first", "invoice_date", true),
+        NUMBER("Invoice #", "invoice_number", true),
+        CUSTOMER("Customer", "customer_name COLLATE NOCASE", true),
+        AMOUNT("Amount", "total", false);
+        
+        private final String displayName;
+        private final String column;
+        private final boolean ascending;
+        
+        SortOrder(String displayName, String column, boolean ascending) {
+            this.displayName = displayName;
+            this.column = column;
+            this.ascending = ascending;
+        }
+        
+        public String getColumn() {
+            return column;
+        }
+        
+        public boolean isAscending() {
+            return ascending;
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+        
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceSummary;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+ // A sequence of invoices handed to an exporter one at a time, so a
+ // database cursor can feed an export without building a List first
+ 
+public interface InvoiceSource {
+    
+    // Number of invoices forEach will deliver; used for progress reporting
+    int size() throws Exception;
+    
+    void forEach(InvoiceHandler handler) throws Exception;
+    
+    // Splits the invoices into shards for a split export. This fallback reads
+    // everything once and groups it in memory; database sources plan in SQL instead
+    default List<Shard> split(ExportOptions.ShardMode mode, int shardSize) throws Exception {
+        Map<String, String> labels = new LinkedHashMap<>();
+        Map<String, List<Invoice>> groups = new LinkedHashMap<>();
+        int[] index = {0};
+        forEach(invoice -> {
+            String label;
+            switch (mode) {
+                case MONTH:
+                    label = YearMonth.from(invoice.getInvoiceDate()).toString();
+                    break;
+                case CUSTOMER:
+                    label = invoice.getCustomerName();
+                    break;
+                default:
+                    label = Shard.partLabel(index[0] / shardSize + 1);
+                    break;
+            }
+            index[0]++;
+            String key = label.toLowerCase();
+            labels.putIfAbsent(key, label);
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(invoice);
+        });
+        
+        List<Shard> shards = new ArrayList<>();
+        for (Map.Entry<String, List<Invoice>> group : groups.entrySet()) {
+            shards.add(new Shard(labels.get(group.getKey()), of(group.getValue()), group.getValue().size()));
+        }
+        return shards;
+    }
+    
+    
+    interface InvoiceHandler {
+        void handle(Invoice invoice) throws Exception;
+    }
+    
+    
+    // One piece of a split export, written to its own file
+    final class Shard {
+        private final String label;
+        private final InvoiceSource source;
+        private final int size;
+        
+        public Shard(String label, InvoiceSource source, int size) {
+            this.label = label;
+            this.source = source;
+            this.size = size;
+        }
+        
+        static String partLabel(int number) {
+            return String.format("part%03d", number);
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+        
+        public InvoiceSource getSource() {
+            return source;
+        }
+        
+        public int getSize() {
+            return size;
+        }
+    }
+    
+    
+    static InvoiceSource of(List<Invoice> invoices) {
+        return new InvoiceSource() {
+            @Override
+            public int size() {
+                return invoices.size();
+            }
+            
+            @Override
+            public void forEach(InvoiceHandler handler) throws Exception {
+                for (Invoice invoice : invoices) {
+                    handler.handle(invoice);
+                }
+            }
+        };
+    }
+    
+    static InvoiceSource fromDatabase(ExportCriteria criteria) {
+        return new InvoiceSource() {
+            @Override
+            public int size() throws Exception {
+                return DatabaseService.getInstance().countInvoices(criteria);
+            }
+            
+            @Override
+            public void forEach(InvoiceHandler handler) throws Exception {
+                DatabaseService.getInstance().forEachInvoice(criteria, handler);
+            }
+            
+            // Shard bounds come from grouped counts, so no invoice is read twice
+            @Override
+            public List<Shard> split(ExportOptions.ShardMode mode, int shardSize) throws Exception {
+                DatabaseService db = DatabaseService.getInstance();
+                List<Shard> shards = new ArrayList<>();
+                switch (mode) {
+                    case MONTH:
+                        Map<YearMonth, Integer> months = new LinkedHashMap<>();
+                        db.countInvoicesByDate(criteria).forEach((date, count) ->
+                            months.merge(YearMonth.from(date), count, Integer::sum));
+                        months.forEach((month, count) -> shards.add(new Shard(month.toString(),
+                            fromDatabase(criteria.within(month.atDay(1), month.atEndOfMonth())), count)));
+                        break;
+                    case CUSTOMER:
+                        db.countInvoicesByCustomer(criteria).forEach((name, count) ->
+                            shards.add(new Shard(name, fromDatabase(criteria.forCustomer(name)), count)));
+                        break;
+                    default:
+                        int remaining = db.countInvoices(criteria);
+                        ExportCriteria start = criteria;
+                        for (InvoiceSummary last : db.findShardBoundaries(criteria, shardSize)) {
+                            int count = Math.min(shardSize, remaining);
+                            shards.add(new Shard(Shard.partLabel(shards.size() + 1),
+                                fromDatabase(start.through(last.getInvoiceDate(), last.getId())), count));
+                            remaining -= count;
+                            start = criteria.after(last.getInvoiceDate(), last.getId());
+                        }
+                        break;
+                }
+                return shards;
+            }
+        };
+    }
+}
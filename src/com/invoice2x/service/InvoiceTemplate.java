@@ -0,0 +1,561 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceItem;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFClientAnchor;
+import org.apache.poi.xssf.usermodel.XSSFDrawing;
+import org.apache.poi.xssf.usermodel.XSSFPicture;
+import org.apache.poi.xssf.usermodel.XSSFShape;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+
+ // The constant part of an invoice sheet, built once and stamped for every invoice,
+ // so per sheet only the invoice's own cells are laid out.
+ // Cells may hold {placeholders}: {company.*} settings are filled in when the template
+ // is built, invoice fields when it is stamped. The row holding {item.*} placeholders
+ // repeats once per line item, and a row whose placeholders all come out empty is
+ // dropped; the rows below move to match.
+
+public class InvoiceTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([a-z_]+\\.[a-z_]+)\\}");
+
+    private final List<TemplateRow> rows = new ArrayList<>();
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+    private final List<TemplatePicture> pictures = new ArrayList<>();
+    private int[] columnWidths = new int[0];
+    private boolean displayGridlines = true;
+    private int itemsRow = -1;
+    private int lastRow = -1;
+    // Cell styles and pictures of a template file; null for the built-in template
+    private final XSSFWorkbook source;
+
+    private InvoiceTemplate(XSSFWorkbook source) {
+        this.source = source;
+    }
+
+    // The standard sheet: invoice details, company and customer blocks, items and totals
+    public static InvoiceTemplate builtIn(String companyName, String companyAddress) {
+        InvoiceTemplate template = new InvoiceTemplate(null);
+
+        template.row(0).literal(0, "INVOICE", SheetLayout.StyleKey.HEADER);
+
+        template.row(2).literal(0, "Invoice #:", SheetLayout.StyleKey.BOLD).field(1, Field.INVOICE_NUMBER);
+        template.row(3).literal(0, "Date:", SheetLayout.StyleKey.BOLD).field(1, Field.INVOICE_DATE);
+        template.row(4).literal(0, "Due Date:", SheetLayout.StyleKey.BOLD).field(1, Field.DUE_DATE);
+        template.row(5).literal(0, "Status:", SheetLayout.StyleKey.BOLD).field(1, Field.STATUS);
+
+        template.row(7).literal(0, "From:", SheetLayout.StyleKey.BOLD)
+            .literal(1, companyName, SheetLayout.StyleKey.NONE);
+        template.row(8).literal(0, "", SheetLayout.StyleKey.NONE)
+            .literal(1, companyAddress, SheetLayout.StyleKey.NONE);
+
+        template.row(10).literal(0, "To:", SheetLayout.StyleKey.BOLD).field(1, Field.CUSTOMER_NAME);
+        template.row(11).literal(0, "", SheetLayout.StyleKey.NONE).field(1, Field.CUSTOMER_EMAIL);
+        template.row(12).literal(0, "", SheetLayout.StyleKey.NONE).field(1, Field.CUSTOMER_ADDRESS);
+
+        TemplateRow tableHeader = template.row(14);
+        String[] headers = {"#", "Description", "Quantity", "Unit Price", "Total"};
+        for (int i = 0; i < headers.length; i++) {
+            tableHeader.literal(i, headers[i], SheetLayout.StyleKey.TABLE_HEADER);
+        }
+        template.addRow(new TemplateRow(15)
+            .field(0, Field.ITEM_NUMBER, SheetLayout.StyleKey.TABLE_CELL)
+            .field(1, Field.ITEM_DESCRIPTION, SheetLayout.StyleKey.TABLE_CELL)
+            .field(2, Field.ITEM_QUANTITY, SheetLayout.StyleKey.TABLE_CELL)
+            .field(3, Field.ITEM_UNIT_PRICE, SheetLayout.StyleKey.CURRENCY)
+            .field(4, Field.ITEM_TOTAL, SheetLayout.StyleKey.CURRENCY));
+
+        template.row(17).literal(3, "Subtotal:", SheetLayout.StyleKey.BOLD)
+            .field(4, Field.SUBTOTAL, SheetLayout.StyleKey.CURRENCY);
+        template.row(18).literal(3, "Tax:", SheetLayout.StyleKey.BOLD)
+            .field(4, Field.TAX, SheetLayout.StyleKey.CURRENCY);
+        template.row(19).literal(3, "TOTAL:", SheetLayout.StyleKey.TOTAL)
+            .field(4, Field.TOTAL, SheetLayout.StyleKey.TOTAL);
+
+        template.row(21).literal(0, "Notes:", SheetLayout.StyleKey.BOLD).field(1, Field.NOTES);
+
+        template.columnWidths = new int[] {2000, 8000, 3000, 3500, 3500};
+        return template;
+    }
+
+     // Reads the first sheet of a branded .xlsx: its cells, styles, row heights, column
+     // widths, merged regions and pictures. Formulas keep their cached value.
+
+    public static InvoiceTemplate load(File file, Map<String, String> companySettings) throws IOException {
+        XSSFWorkbook workbook;
+        try (InputStream in = new FileInputStream(file)) {
+            workbook = new XSSFWorkbook(in);
+        }
+        if (workbook.getNumberOfSheets() == 0) {
+            workbook.close();
+            throw new IOException("Template " + file + " has no sheets");
+        }
+        XSSFSheet sheet = workbook.getSheetAt(0);
+        InvoiceTemplate template = new InvoiceTemplate(workbook);
+
+        int columns = 0;
+        for (Row row : sheet) {
+            TemplateRow templateRow = new TemplateRow(row.getRowNum());
+            if (row.getHeight() != sheet.getDefaultRowHeight()) {
+                templateRow.height = row.getHeight();
+            }
+            for (Cell cell : row) {
+                int column = cell.getColumnIndex();
+                // The default style needs no copying
+                int style = cell.getCellStyle().getIndex() != 0 ? cell.getCellStyle().getIndex() : -1;
+                CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+
+                if (type == CellType.STRING) {
+                    String where = cell.getAddress().formatAsString();
+                    List<Object> parts = parse(cell.getStringCellValue(), companySettings, where);
+                    templateRow.add(new TemplateCell(column, parts, SheetLayout.StyleKey.NONE, style));
+                } else if (type == CellType.NUMERIC) {
+                    templateRow.add(new TemplateCell(column, new SheetLayout.LayoutCell(column, null,
+                        cell.getNumericCellValue(), true, SheetLayout.StyleKey.NONE, style)));
+                } else if (type == CellType.BOOLEAN) {
+                    templateRow.add(new TemplateCell(column, new SheetLayout.LayoutCell(column,
+                        String.valueOf(cell.getBooleanCellValue()).toUpperCase(), 0, false, SheetLayout.StyleKey.NONE, style)));
+                } else if (style >= 0) {
+                    // Blank but styled, e.g. a coloured band
+                    templateRow.add(new TemplateCell(column, new SheetLayout.LayoutCell(column, null,
+                        0, false, SheetLayout.StyleKey.NONE, style)));
+                } else {
+                    continue;
+                }
+                columns = Math.max(columns, column + 1);
+            }
+
+            if (templateRow.itemFields && template.itemsRow >= 0) {
+                workbook.close();
+                throw new IOException("Template " + file + ": only one row may hold {item.*} placeholders");
+            }
+            if (!templateRow.cells.isEmpty() || templateRow.height >= 0) {
+                template.addRow(templateRow);
+            }
+        }
+
+        template.columnWidths = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            template.columnWidths[i] = sheet.getColumnWidth(i);
+        }
+        for (CellRangeAddress region : sheet.getMergedRegions()) {
+            template.mergedRegions.add(region);
+            template.lastRow = Math.max(template.lastRow, region.getLastRow());
+        }
+        XSSFDrawing drawing = sheet.getDrawingPatriarch();
+        if (drawing != null) {
+            for (XSSFShape shape : drawing.getShapes()) {
+                if (shape instanceof XSSFPicture) {
+                    TemplatePicture picture = new TemplatePicture((XSSFPicture) shape);
+                    template.pictures.add(picture);
+                    template.lastRow = Math.max(template.lastRow, picture.row2);
+                }
+            }
+        }
+        template.displayGridlines = sheet.isDisplayGridlines();
+        return template;
+    }
+
+    // Lays out one invoice sheet. Only reads the template, so it is safe on any thread.
+    public SheetLayout stamp(Invoice invoice) {
+        SheetLayout layout = new SheetLayout(invoice.getInvoiceNumber());
+        int items = invoice.getItems().size();
+
+        // Where each template row ends up, or -1 when it was dropped
+        int[] rowMap = new int[lastRow + 1];
+        int shift = 0;
+        int next = 0;
+        for (TemplateRow row : rows) {
+            for (; next < row.index; next++) {
+                rowMap[next] = next + shift;
+            }
+            next = row.index + 1;
+            int target = row.index + shift;
+
+            if (row.index == itemsRow) {
+                int itemNumber = 1;
+                for (InvoiceItem item : invoice.getItems()) {
+                    row.stamp(layout, target + itemNumber - 1, invoice, item, itemNumber);
+                    itemNumber++;
+                }
+                rowMap[row.index] = items > 0 ? target : -1;
+                shift += items - 1;
+            } else if (row.stamp(layout, target, invoice, null, 0)) {
+                rowMap[row.index] = target;
+            } else {
+                rowMap[row.index] = -1;
+                shift--;
+            }
+        }
+        for (; next <= lastRow; next++) {
+            rowMap[next] = next + shift;
+        }
+
+        for (CellRangeAddress region : mergedRegions) {
+            int first = rowMap[region.getFirstRow()];
+            if (first < 0) {
+                continue;
+            }
+            int height = region.getLastRow() - region.getFirstRow();
+            int copies = region.getFirstRow() == itemsRow && height == 0 ? items : 1;
+            for (int n = 0; n < copies; n++) {
+                layout.addMergedRegion(new CellRangeAddress(first + n, first + n + height,
+                    region.getFirstColumn(), region.getLastColumn()));
+            }
+        }
+        for (int i = 0; i < pictures.size(); i++) {
+            int row = rowMap[pictures.get(i).row1];
+            if (row >= 0) {
+                layout.addPicture(i, row);
+            }
+        }
+
+        layout.setColumnWidths(columnWidths);
+        return layout;
+    }
+
+    // Copies a cell style of the template file into the export workbook
+    public CellStyle copyStyle(Workbook workbook, int index) {
+        CellStyle style = workbook.createCellStyle();
+        // Reading the source styles is not thread-safe, and concurrent exports share the template
+        synchronized (source) {
+            style.cloneStyleFrom(source.getCellStyleAt(index));
+        }
+        return style;
+    }
+
+    // Adds a picture of the template file to the export workbook; returns its index there
+    public int copyPicture(Workbook workbook, int picture) {
+        TemplatePicture templatePicture = pictures.get(picture);
+        return workbook.addPicture(templatePicture.data, templatePicture.type);
+    }
+
+    // Where a stamped picture goes, same size and columns as in the template
+    public ClientAnchor anchorFor(Workbook workbook, SheetLayout.LayoutPicture placed) {
+        TemplatePicture picture = pictures.get(placed.getPicture());
+        ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+        anchor.setCol1(picture.col1);
+        anchor.setCol2(picture.col2);
+        anchor.setRow1(placed.getRow());
+        anchor.setRow2(placed.getRow() + picture.row2 - picture.row1);
+        anchor.setDx1(picture.dx1);
+        anchor.setDy1(picture.dy1);
+        anchor.setDx2(picture.dx2);
+        anchor.setDy2(picture.dy2);
+        anchor.setAnchorType(picture.anchorType);
+        return anchor;
+    }
+
+    public boolean isDisplayGridlines() {
+        return displayGridlines;
+    }
+
+    // Item rows must be filled before addRow, which is where they are recognised
+    private TemplateRow row(int index) {
+        TemplateRow row = new TemplateRow(index);
+        addRow(row);
+        return row;
+    }
+
+    private void addRow(TemplateRow row) {
+        rows.add(row);
+        lastRow = Math.max(lastRow, row.index);
+        if (row.itemFields) {
+            itemsRow = row.index;
+        }
+    }
+
+    // Splits text into literal Strings and Fields, filling in {company.*} from the settings
+    private static List<Object> parse(String text, Map<String, String> companySettings,
+                                      String where) throws IOException {
+        List<Object> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        int end = 0;
+        while (matcher.find()) {
+            literal.append(text, end, matcher.start());
+            end = matcher.end();
+            String name = matcher.group(1);
+            if (name.startsWith("company.")) {
+                literal.append(companySettings.getOrDefault(name, ""));
+                continue;
+            }
+            Field field = Field.fromPlaceholder(name);
+            if (field == null) {
+                throw new IOException("Unknown placeholder {" + name + "} in template cell " + where);
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+                literal.setLength(0);
+            }
+            parts.add(field);
+        }
+        literal.append(text, end, text.length());
+        if (literal.length() > 0 || parts.isEmpty()) {
+            parts.add(literal.toString());
+        }
+        return parts;
+    }
+
+    private static boolean isEmpty(Object value) {
+        return value == null || (value instanceof String && ((String) value).isEmpty());
+    }
+
+
+    private static class TemplateRow {
+        private final int index;
+        private final List<TemplateCell> cells = new ArrayList<>();
+        private short height = -1;
+        private boolean hasFields;
+        private boolean itemFields;
+
+        TemplateRow(int index) {
+            this.index = index;
+        }
+
+        TemplateRow literal(int column, String text, SheetLayout.StyleKey style) {
+            if (text != null) {
+                add(new TemplateCell(column, new SheetLayout.LayoutCell(column, text, 0, false, style)));
+            }
+            return this;
+        }
+
+        TemplateRow field(int column, Field field) {
+            return field(column, field, SheetLayout.StyleKey.NONE);
+        }
+
+        TemplateRow field(int column, Field field, SheetLayout.StyleKey style) {
+            add(new TemplateCell(column, Collections.singletonList(field), style, -1));
+            return this;
+        }
+
+        void add(TemplateCell cell) {
+            cells.add(cell);
+            if (cell.constant == null) {
+                hasFields = true;
+                for (Object part : cell.parts) {
+                    if (part instanceof Field && ((Field) part).isItemField()) {
+                        itemFields = true;
+                    }
+                }
+            }
+        }
+
+        // False, adding nothing, when every placeholder in the row came out empty
+        boolean stamp(SheetLayout layout, int rowIndex, Invoice invoice, InvoiceItem item, int itemNumber) {
+            SheetLayout.LayoutCell[] stamped = new SheetLayout.LayoutCell[cells.size()];
+            boolean filled = !hasFields || item != null;
+            for (int i = 0; i < stamped.length; i++) {
+                TemplateCell cell = cells.get(i);
+                stamped[i] = cell.stamp(invoice, item, itemNumber);
+                filled |= cell.constant == null && stamped[i] != null;
+            }
+            if (!filled) {
+                return false;
+            }
+
+            SheetLayout.LayoutRow row = layout.addRow(rowIndex);
+            row.setHeight(height);
+            for (SheetLayout.LayoutCell cell : stamped) {
+                if (cell != null) {
+                    row.add(cell);
+                }
+            }
+            return true;
+        }
+    }
+
+
+    private static class TemplateCell {
+        private final int column;
+        private final SheetLayout.StyleKey style;
+        private final int templateStyle;
+        // Cells without placeholders are built once and shared by every stamped sheet
+        private final SheetLayout.LayoutCell constant;
+        // Otherwise the cell text as literal Strings and Fields
+        private final List<Object> parts;
+
+        TemplateCell(int column, SheetLayout.LayoutCell constant) {
+            this.column = column;
+            this.style = constant.getStyle();
+            this.templateStyle = constant.getTemplateStyle();
+            this.constant = constant;
+            this.parts = null;
+        }
+
+        TemplateCell(int column, List<Object> parts, SheetLayout.StyleKey style, int templateStyle) {
+            this.column = column;
+            this.style = style;
+            this.templateStyle = templateStyle;
+            boolean hasField = false;
+            for (Object part : parts) {
+                hasField |= part instanceof Field;
+            }
+            this.constant = hasField ? null
+                : new SheetLayout.LayoutCell(column, (String) parts.get(0), 0, false, style, templateStyle);
+            this.parts = hasField ? parts : null;
+        }
+
+        // Null when the cell's placeholders all came out empty
+        SheetLayout.LayoutCell stamp(Invoice invoice, InvoiceItem item, int itemNumber) {
+            if (constant != null) {
+                return constant;
+            }
+            if (parts.size() == 1) {
+                Object value = ((Field) parts.get(0)).valueOf(invoice, item, itemNumber);
+                if (value instanceof Number) {
+                    // Amounts and counts stay numeric so the cell style can format them
+                    return new SheetLayout.LayoutCell(column, null, ((Number) value).doubleValue(),
+                                                      true, style, templateStyle);
+                }
+                return isEmpty(value) ? null
+                    : new SheetLayout.LayoutCell(column, (String) value, 0, false, style, templateStyle);
+            }
+
+            StringBuilder text = new StringBuilder();
+            boolean filled = false;
+            for (Object part : parts) {
+                if (!(part instanceof Field)) {
+                    text.append(part);
+                    continue;
+                }
+                Object value = ((Field) part).valueOf(invoice, item, itemNumber);
+                if (!isEmpty(value)) {
+                    text.append(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value);
+                    filled = true;
+                }
+            }
+            return filled ? new SheetLayout.LayoutCell(column, text.toString(), 0, false, style, templateStyle) : null;
+        }
+    }
+
+
+    private static class TemplatePicture {
+        private final byte[] data;
+        private final int type;
+        private final int col1;
+        private final int row1;
+        private final int col2;
+        private final int row2;
+        private final int dx1;
+        private final int dy1;
+        private final int dx2;
+        private final int dy2;
+        private final ClientAnchor.AnchorType anchorType;
+
+        TemplatePicture(XSSFPicture picture) {
+            this.data = picture.getPictureData().getData();
+            this.type = picture.getPictureData().getPictureType();
+            XSSFClientAnchor anchor = picture.getClientAnchor();
+            this.col1 = anchor.getCol1();
+            this.row1 = anchor.getRow1();
+            this.col2 = anchor.getCol2();
+            this.row2 = anchor.getRow2();
+            this.dx1 = anchor.getDx1();
+            this.dy1 = anchor.getDy1();
+            this.dx2 = anchor.getDx2();
+            this.dy2 = anchor.getDy2();
+            this.anchorType = anchor.getAnchorType();
+        }
+    }
+
+
+    // Invoice values a template cell can refer to as {name}
+    private enum Field {
+        INVOICE_NUMBER("invoice.number"),
+        INVOICE_DATE("invoice.date"),
+        DUE_DATE("invoice.due_date"),
+        STATUS("invoice.status"),
+        SUBTOTAL("invoice.subtotal"),
+        TAX("invoice.tax"),
+        TOTAL("invoice.total"),
+        NOTES("invoice.notes"),
+        CUSTOMER_NAME("customer.name"),
+        CUSTOMER_EMAIL("customer.email"),
+        CUSTOMER_ADDRESS("customer.address"),
+        ITEM_NUMBER("item.number"),
+        ITEM_DESCRIPTION("item.description"),
+        ITEM_QUANTITY("item.quantity"),
+        ITEM_UNIT_PRICE("item.unit_price"),
+        ITEM_TOTAL("item.total");
+
+        private final String placeholder;
+
+        Field(String placeholder) {
+            this.placeholder = placeholder;
+        }
+
+        static Field fromPlaceholder(String name) {
+            for (Field field : values()) {
+                if (field.placeholder.equals(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        boolean isItemField() {
+            return placeholder.startsWith("item.");
+        }
+
+        // A String, a Number for amounts and counts, or null when there is no value
+        Object valueOf(Invoice invoice, InvoiceItem item, int itemNumber) {
+            switch (this) {
+                case INVOICE_NUMBER:
+                    return invoice.getInvoiceNumber();
+                case INVOICE_DATE:
+                    return invoice.getInvoiceDate() != null ? invoice.getInvoiceDate().toString() : null;
+                case DUE_DATE:
+                    return invoice.getDueDate() != null ? invoice.getDueDate().toString() : null;
+                case STATUS:
+                    return invoice.getStatus() != null ? invoice.getStatus().getDisplayName() : null;
+                case SUBTOTAL:
+                    return invoice.getSubtotal();
+                case TAX:
+                    return invoice.getTax();
+                case TOTAL:
+                    return invoice.getTotal();
+                case NOTES:
+                    return invoice.getNotes();
+                case CUSTOMER_NAME:
+                    return invoice.getCustomerName();
+                case CUSTOMER_EMAIL:
+                    return invoice.getCustomerEmail();
+                case CUSTOMER_ADDRESS:
+                    return invoice.getCustomerAddress();
+                case ITEM_NUMBER:
+                    return itemNumber;
+                case ITEM_DESCRIPTION:
+                    return item.getDescription();
+                case ITEM_QUANTITY:
+                    return item.getQuantity();
+                case ITEM_UNIT_PRICE:
+                    return item.getUnitPrice();
+                case ITEM_TOTAL:
+                    return item.getTotal();
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.invoice2x.service;
+
+import java.math.BigDecimal;
+
+
+ // Number of invoices and the sum of their totals, as returned by the grouped analytics queries
+
+public class InvoiceTotals {
+
+    public static final InvoiceTotals ZERO = new InvoiceTotals(0, BigDecimal.ZERO.setScale(2));
+
+    private final int count;
+    private final BigDecimal amount;
+
+    public InvoiceTotals(int count, BigDecimal amount) {
+        this.count = count;
+        this.amount = amount;
+    }
+
+    // Totals are summed in cents so the result is exact
+    static InvoiceTotals ofCents(int count, long cents) {
+        return new InvoiceTotals(count, BigDecimal.valueOf(cents, 2));
+    }
+
+    public InvoiceTotals add(InvoiceTotals other) {
+        return new InvoiceTotals(count + other.count, amount.add(other.amount));
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return count + " invoices, " + amount;
+    }
+}
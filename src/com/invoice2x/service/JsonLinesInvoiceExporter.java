@@ -0,0 +1,96 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceItem;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+
+ // JSON Lines: one JSON object per invoice, with its items nested in an array.
+ // Amounts are written as exact decimal numbers, dates as ISO strings.
+ 
+public class JsonLinesInvoiceExporter extends TextInvoiceExporter {
+    
+    @Override
+    protected void writeInvoice(Writer out, Invoice invoice) throws IOException {
+        out.write("{\"id\":");
+        out.write(String.valueOf(invoice.getId()));
+        writeString(out, "invoice_number", invoice.getInvoiceNumber());
+        writeString(out, "invoice_date", invoice.getInvoiceDate() != null ? invoice.getInvoiceDate().toString() : null);
+        writeString(out, "due_date", invoice.getDueDate() != null ? invoice.getDueDate().toString() : null);
+        writeString(out, "status", invoice.getStatus() != null ? invoice.getStatus().name() : null);
+        writeString(out, "customer_name", invoice.getCustomerName());
+        writeString(out, "customer_email", invoice.getCustomerEmail());
+        writeString(out, "customer_address", invoice.getCustomerAddress());
+        writeNumber(out, "subtotal", invoice.getSubtotal());
+        writeNumber(out, "tax", invoice.getTax());
+        writeNumber(out, "total", invoice.getTotal());
+        writeString(out, "notes", invoice.getNotes());
+        
+        out.write(",\"items\":[");
+        boolean first = true;
+        for (InvoiceItem item : invoice.getItems()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("{\"description\":");
+            writeValue(out, item.getDescription());
+            writeNumber(out, "quantity", item.getQuantity());
+            writeNumber(out, "unit_price", item.getUnitPrice());
+            writeNumber(out, "total", item.getTotal());
+            out.write('}');
+        }
+        out.write("]}\n");
+    }
+    
+    private void writeString(Writer out, String name, String value) throws IOException {
+        out.write(",\"");
+        out.write(name);
+        out.write("\":");
+        writeValue(out, value);
+    }
+    
+    private void writeNumber(Writer out, String name, BigDecimal value) throws IOException {
+        out.write(",\"");
+        out.write(name);
+        out.write("\":");
+        out.write(value != null ? value.toPlainString() : "null");
+    }
+    
+    private void writeValue(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
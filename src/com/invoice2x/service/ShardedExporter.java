@@ -0,0 +1,229 @@
+package com.invoice2x.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+
+ // Splits an export into one file per shard (by count, month or customer) and
+ // writes the shards concurrently. Bundled shards are compressed into the ZIP as
+ // each one finishes, while the others are still being written.
+
+public class ShardedExporter implements InvoiceExporter {
+
+    private final ExportOptions options;
+
+    public ShardedExporter(ExportOptions options) {
+        this.options = options;
+    }
+
+    @Override
+    public void export(InvoiceSource source, String filePath,
+                       ExcelExportService.ExportProgressListener listener) throws Exception {
+        long started = System.currentTimeMillis();
+        List<InvoiceSource.Shard> shards = source.split(options.getShardMode(), options.getShardSize());
+        int total = 0;
+        for (InvoiceSource.Shard shard : shards) {
+            total += shard.getSize();
+        }
+
+        File output = new File(filePath).getAbsoluteFile();
+        boolean zip = options.isZipShards();
+        File directory = zip
+            ? Files.createTempDirectory(output.getParentFile().toPath(), "export-shards").toFile()
+            : output.getParentFile();
+        List<File> files = shardFiles(shards, directory, baseName(output));
+
+        // Each shard writer holds a database cursor for the whole shard. The pool caps cursors
+        // across all jobs; more threads than that would only wait for a permit.
+        int readers = DatabaseService.getInstance().getCursorReaderCount();
+        int threads = Math.max(1, Math.min(Math.min(options.getParallelism(), readers), shards.size()));
+        ExecutorService writers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "export-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService compressors = zip ? Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "export-zip");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        ParallelScatterZipCreator zipCreator = zip ? new ParallelScatterZipCreator(compressors) : null;
+
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger shardsDone = new AtomicInteger();
+        List<ShardResult> results = new ArrayList<>();
+        boolean succeeded = false;
+        try {
+            List<Future<ShardResult>> futures = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                InvoiceSource.Shard shard = shards.get(i);
+                File file = files.get(i);
+                int count = total;
+                futures.add(writers.submit(() -> {
+                    ShardResult result = writeShard(shard, file, done, count, listener);
+                    if (zipCreator != null) {
+                        addToZip(zipCreator, file);
+                    }
+                    if (listener != null) {
+                        listener.onProgress(done.get(), count, "Shard " + shardsDone.incrementAndGet() + "/" +
+                            shards.size() + " " + result);
+                    }
+                    return result;
+                }));
+            }
+
+            for (Future<ShardResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+
+            if (zipCreator != null) {
+                try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(output)) {
+                    zipCreator.writeTo(zipOut);
+                }
+            }
+            succeeded = true;
+
+        } finally {
+            // Shards already running cannot be interrupted; wait for them before deleting their files
+            writers.shutdownNow();
+            writers.awaitTermination(30, TimeUnit.SECONDS);
+            if (compressors != null) {
+                compressors.shutdownNow();
+            }
+            if (zip) {
+                for (File file : files) {
+                    file.delete();
+                }
+                directory.delete();
+            } else if (!succeeded) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+
+        report(results, System.currentTimeMillis() - started, total, listener);
+        if (listener != null) {
+            listener.onComplete(filePath);
+        }
+    }
+
+    private ShardResult writeShard(InvoiceSource.Shard shard, File file, AtomicInteger done, int total,
+                                   ExcelExportService.ExportProgressListener listener) throws Exception {
+        long started = System.currentTimeMillis();
+        // Progress is counted here across all shards; the shard's own exporter stays quiet
+        InvoiceSource counted = new InvoiceSource() {
+            @Override
+            public int size() {
+                return shard.getSize();
+            }
+
+            @Override
+            public void forEach(InvoiceHandler handler) throws Exception {
+                shard.getSource().forEach(invoice -> {
+                    handler.handle(invoice);
+                    int current = done.incrementAndGet();
+                    if (listener != null) {
+                        listener.onProgress(current, total, "Exporting " + shard.getLabel() +
+                            " (" + current + " of " + total + ")");
+                    }
+                });
+            }
+        };
+        options.forShard().createExporter().export(counted, file.getPath(), null);
+        return new ShardResult(shard.getLabel(), file, shard.getSize(), System.currentTimeMillis() - started);
+    }
+
+    // Spreadsheets are already deflated inside, so they are stored rather than compressed again
+    private void addToZip(ParallelScatterZipCreator zipCreator, File file) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(file.getName());
+        entry.setMethod(options.getFormat().isSpreadsheet() ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+        entry.setTime(file.lastModified());
+        synchronized (zipCreator) {
+            zipCreator.addArchiveEntry(entry, () -> {
+                try {
+                    return new FileInputStream(file);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot read shard " + file, e);
+                }
+            });
+        }
+    }
+
+    private void report(List<ShardResult> results, long elapsed, int total,
+                        ExcelExportService.ExportProgressListener listener) {
+        ShardResult slowest = null;
+        for (ShardResult result : results) {
+            if (slowest == null || result.millis > slowest.millis) {
+                slowest = result;
+            }
+        }
+        String summary = results.size() + " shards, " + total + " invoices in " + elapsed + "ms" +
+            (slowest != null ? "; slowest " + slowest : "");
+        if (listener != null) {
+            listener.onProgress(total, total, summary);
+        }
+    }
+
+    // <base>_<label>.<ext>, with labels made safe for file names and kept unique
+    private List<File> shardFiles(List<InvoiceSource.Shard> shards, File directory, String base) {
+        String extension = "." + options.getFormat().getExtension();
+        Set<String> used = new HashSet<>();
+        List<File> files = new ArrayList<>();
+        for (InvoiceSource.Shard shard : shards) {
+            String label = shard.getLabel().replaceAll("[^A-Za-z0-9._-]+", "_");
+            String name = base + "_" + label;
+            int suffix = 2;
+            while (!used.add(name.toLowerCase())) {
+                name = base + "_" + label + "_" + suffix++;
+            }
+            files.add(new File(directory, name + extension));
+        }
+        return files;
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+
+    private static class ShardResult {
+        private final String label;
+        private final File file;
+        private final int invoices;
+        private final long millis;
+
+        ShardResult(String label, File file, int invoices, long millis) {
+            this.label = label;
+            this.file = file;
+            this.invoices = invoices;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return label + ": " + invoices + " invoices in " + millis + "ms (" + file.getName() + ")";
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.invoice2x.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+
+ // Pre-computed content of one sheet: cell values, style keys and column widths.
+ // Built on worker threads without touching POI; only the writer stage creates cells.
+ 
+public class SheetLayout {
+    
+    private final String name;
+    private final List<LayoutRow> rows = new ArrayList<>();
+    private int[] columnWidths = new int[0];
+    private final List<CellRangeAddress> mergedRegions = new ArrayList<>();
+    private final List<LayoutPicture> pictures = new ArrayList<>();
+    
+    public SheetLayout(String name) {
+        this.name = name;
+    }
+    
+    public LayoutRow addRow(int index) {
+        LayoutRow row = new LayoutRow(index);
+        rows.add(row);
+        return row;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public List<LayoutRow> getRows() {
+        return rows;
+    }
+    
+    public int[] getColumnWidths() {
+        return columnWidths;
+    }
+    
+    public void setColumnWidths(int... columnWidths) {
+        this.columnWidths = columnWidths;
+    }
+    
+    public List<CellRangeAddress> getMergedRegions() {
+        return mergedRegions;
+    }
+    
+    public void addMergedRegion(CellRangeAddress region) {
+        mergedRegions.add(region);
+    }
+    
+    public List<LayoutPicture> getPictures() {
+        return pictures;
+    }
+    
+    // Places picture number `picture` of the sheet's template with its top edge on row
+    public void addPicture(int picture, int row) {
+        pictures.add(new LayoutPicture(picture, row));
+    }
+    
+    
+    public static class LayoutRow {
+        
+        private final int index;
+        private final List<LayoutCell> cells = new ArrayList<>();
+        private short height = -1;
+        
+        LayoutRow(int index) {
+            this.index = index;
+        }
+        
+        // Template cells are immutable, so one instance can sit in every stamped sheet
+        LayoutRow add(LayoutCell cell) {
+            cells.add(cell);
+            return this;
+        }
+        
+        public LayoutRow text(int column, String value, StyleKey style) {
+            cells.add(new LayoutCell(column, value, 0, false, style));
+            return this;
+        }
+        
+        public LayoutRow number(int column, double value, StyleKey style) {
+            cells.add(new LayoutCell(column, null, value, true, style));
+            return this;
+        }
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        public List<LayoutCell> getCells() {
+            return cells;
+        }
+        
+        // In twips; -1 keeps the sheet's default height
+        public short getHeight() {
+            return height;
+        }
+        
+        public void setHeight(short height) {
+            this.height = height;
+        }
+    }
+    
+    
+    public static class LayoutCell {
+        
+        private final int column;
+        private final String text;
+        private final double number;
+        private final boolean numeric;
+        private final StyleKey style;
+        private final int templateStyle;
+        
+        LayoutCell(int column, String text, double number, boolean numeric, StyleKey style) {
+            this(column, text, number, numeric, style, -1);
+        }
+        
+        LayoutCell(int column, String text, double number, boolean numeric, StyleKey style, int templateStyle) {
+            this.column = column;
+            this.text = text;
+            this.number = number;
+            this.numeric = numeric;
+            this.style = style;
+            this.templateStyle = templateStyle;
+        }
+        
+        public int getColumn() {
+            return column;
+        }
+        
+        public String getText() {
+            return text;
+        }
+        
+        public double getNumber() {
+            return number;
+        }
+        
+        public boolean isNumeric() {
+            return numeric;
+        }
+        
+        public StyleKey getStyle() {
+            return style;
+        }
+        
+        // Index of a cell style in the template file, or -1 to use getStyle()
+        public int getTemplateStyle() {
+            return templateStyle;
+        }
+    }
+    
+    
+    public static class LayoutPicture {
+        
+        private final int picture;
+        private final int row;
+        
+        LayoutPicture(int picture, int row) {
+            this.picture = picture;
+            this.row = row;
+        }
+        
+        public int getPicture() {
+            return picture;
+        }
+        
+        public int getRow() {
+            return row;
+        }
+    }
+    
+    
+    // Resolved to a CellStyle through ExportStyles.get on the writer thread
+    public enum StyleKey {
+        NONE, HEADER, BOLD, CURRENCY, TABLE_HEADER, TABLE_CELL, TOTAL, DATE
+    }
+}
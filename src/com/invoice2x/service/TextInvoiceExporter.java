@@ -0,0 +1,93 @@
+package com.invoice2x.service;
+
+import com.invoice2x.model.Invoice;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+ // Base for line-oriented text exporters. Each invoice is encoded as it arrives
+ // and written through one buffered UTF-8 channel, so memory use does not
+ // depend on how many invoices or items are exported.
+ 
+public abstract class TextInvoiceExporter implements InvoiceExporter {
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private long resumeOffset = -1;
+    private CheckpointHandler checkpointHandler;
+    
+    // Continue an earlier, interrupted file: cut it back to the last checkpointed
+    // byte and append from there instead of starting a new file
+    public void resumeAt(long byteOffset) {
+        this.resumeOffset = byteOffset;
+    }
+    
+    public void setCheckpointHandler(CheckpointHandler checkpointHandler) {
+        this.checkpointHandler = checkpointHandler;
+    }
+    
+    @Override
+    public void export(InvoiceSource source, String filePath, 
+                       ExcelExportService.ExportProgressListener listener) throws Exception {
+        
+        int total = source.size();
+        int[] current = {0};
+        
+        boolean resuming = resumeOffset >= 0;
+        StandardOpenOption mode = resuming ? StandardOpenOption.WRITE : StandardOpenOption.TRUNCATE_EXISTING;
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, mode);
+             Writer out = new BufferedWriter(
+                 Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE)) {
+            
+            if (resuming) {
+                channel.truncate(resumeOffset);
+                channel.position(resumeOffset);
+            } else {
+                writeHeader(out);
+            }
+            
+            source.forEach(invoice -> {
+                writeInvoice(out, invoice);
+                
+                if (checkpointHandler != null && checkpointHandler.isDue()) {
+                    // Only bytes that reached the disk may be recorded as done
+                    out.flush();
+                    channel.force(false);
+                    checkpointHandler.checkpoint(invoice, channel.position());
+                }
+                
+                current[0]++;
+                if (listener != null) {
+                    listener.onProgress(current[0], total, 
+                        "Processing invoice " + current[0] + " of " + total + 
+                        " (" + invoice.getInvoiceNumber() + ")");
+                }
+            });
+        }
+        
+        if (listener != null) {
+            listener.onComplete(filePath);
+        }
+    }
+    
+    protected void writeHeader(Writer out) throws IOException {
+    }
+    
+    protected abstract void writeInvoice(Writer out, Invoice invoice) throws IOException;
+    
+    
+    public interface CheckpointHandler {
+        boolean isDue();
+        
+        // Everything up to and including this invoice ends at byteOffset in the file
+        void checkpoint(Invoice lastWritten, long byteOffset) throws Exception;
+    }
+}
@@ -0,0 +1,45 @@
+package com.invoice2x.service;
+
+
+ // Coalesces per-invoice progress events to at most one per interval, so a
+ // 50k-invoice export posts a few hundred UI updates instead of 50k.
+ // The final event (current == total) always gets through.
+ 
+public class ThrottledProgressListener implements ExcelExportService.ExportProgressListener {
+    
+    public static final long DEFAULT_INTERVAL_MS = 100;
+    
+    private final ExcelExportService.ExportProgressListener delegate;
+    private final long intervalNanos;
+    private long lastSent;
+    private boolean sentAny;
+    
+    public ThrottledProgressListener(ExcelExportService.ExportProgressListener delegate) {
+        this(delegate, DEFAULT_INTERVAL_MS);
+    }
+    
+    public ThrottledProgressListener(ExcelExportService.ExportProgressListener delegate, long intervalMs) {
+        this.delegate = delegate;
+        this.intervalNanos = intervalMs * 1_000_000L;
+    }
+    
+    @Override
+    public synchronized void onProgress(int current, int total, String message) {
+        long now = System.nanoTime();
+        if (!sentAny || current >= total || now - lastSent >= intervalNanos) {
+            sentAny = true;
+            lastSent = now;
+            delegate.onProgress(current, total, message);
+        }
+    }
+    
+    @Override
+    public void onComplete(String filePath) {
+        delegate.onComplete(filePath);
+    }
+    
+    @Override
+    public void onError(Exception e) {
+        delegate.onError(e);
+    }
+}
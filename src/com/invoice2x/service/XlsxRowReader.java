@@ -0,0 +1,142 @@
+package com.invoice2x.service;
+
+import java.io.File;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+
+ // Reads the first sheet of an .xlsx with POI's SAX event API, so rows stream
+ // through without building the workbook in memory
+
+public class XlsxRowReader implements ImportRowReader {
+
+    private final File file;
+
+    public XlsxRowReader(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void read(RowHandler handler) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+                    new RowCollector(handler), new ImportFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            } catch (HandlerException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+
+    // Gathers the cells of each row, filling the gaps the sheet XML leaves for empty cells
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler handler;
+        private List<String> cells;
+        private boolean blank;
+
+        RowCollector(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells = new ArrayList<>();
+            blank = true;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? columnOf(cellReference) : cells.size();
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            String value = formattedValue != null ? formattedValue : "";
+            cells.add(value);
+            blank &= value.trim().isEmpty();
+        }
+
+        // The letters of an A1-style reference; CellReference would run a regex per cell
+        private static int columnOf(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char c = cellReference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (blank) {
+                return;
+            }
+            try {
+                handler.row(rowNum + 1, cells);
+            } catch (Exception e) {
+                throw new HandlerException(e);
+            }
+        }
+    }
+
+
+    // Dates come out as ISO dates and numbers as plain decimals, whatever the cell's display format
+    private static class ImportFormatter extends DataFormatter {
+        // DateUtil only remembers the last format it checked, and columns alternate between a few
+        private final Map<Integer, Boolean> dateFormats = new HashMap<>();
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            boolean date = dateFormats.computeIfAbsent(formatIndex, i -> DateUtil.isADateFormat(i, formatString));
+            if (date && DateUtil.isValidExcelDate(value)) {
+                return DateUtil.getLocalDateTime(value).toLocalDate().toString();
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+    }
+
+
+    // Carries the row handler's checked exception out through the SAX parser
+    private static class HandlerException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        HandlerException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+}
@@ -132,14 +132,7 @@ public void exportMultipleInvoices(java.util.List<Integer> invoiceIds) {
         }
 
         DatabaseService db = DatabaseService.getInstance();
-        java.util.List<Invoice> invoices = new java.util.ArrayList<>();
-
-        for (Integer id : invoiceIds) {
-            Invoice inv = db.getInvoiceById(id);
-            if (inv != null) {
-                invoices.add(inv);
-            }
-        }
+        java.util.List<Invoice> invoices = db.getInvoicesByIds(invoiceIds);
 
         if (invoices.isEmpty()) {
             JOptionPane.showMessageDialog(this,
@@ -1,7 +1,9 @@
 package com.invoice2x.util;
 
 import java.io.*;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 
  // Configuration manager for application settings
@@ -47,12 +49,67 @@ public class ConfigManager {
         properties.setProperty("invoice.taxrate", "10");
         properties.setProperty("invoice.currency", "$");
         properties.setProperty("app.theme", "light");
+        properties.setProperty("db.profile", "fast-local");
+        properties.setProperty("db.pool.readers", "3");
+        properties.setProperty("db.statement_cache.size", "32");
+        properties.setProperty("db.invoice_cache.entries", "500");
+        properties.setProperty("db.invoice_cache.max_kb", "4096");
+        properties.setProperty("export.format", "SHEET_PER_INVOICE");
+        properties.setProperty("export.streaming", "true");
+        properties.setProperty("export.row_window", "100");
+        properties.setProperty("export.compress_temp_files", "false");
+        properties.setProperty("export.threads", "0");
+        properties.setProperty("export.concurrency", "2");
+        properties.setProperty("export.queue_capacity", "20");
+        properties.setProperty("export.shard_by", "NONE");
+        properties.setProperty("export.shard_size", "1000");
+        properties.setProperty("export.zip_shards", "true");
+        properties.setProperty("export.template_file", "");
+        properties.setProperty("import.batch_size", "500");
+        properties.setProperty("import.threads", "0");
     }
     
     public String getProperty(String key, String defaultValue) {
         return properties.getProperty(key, defaultValue);
     }
     
+    public int getIntProperty(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    public long getLongProperty(String key, long defaultValue) {
+        try {
+            return Long.parseLong(properties.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    public boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+    
+    // All keys starting with prefix, sorted, e.g. getProperties("company.")
+    public Map<String, String> getProperties(String prefix) {
+        Map<String, String> matching = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                matching.put(key, properties.getProperty(key));
+            }
+        }
+        return matching;
+    }
+    
     public void setProperty(String key, String value) {
         properties.setProperty(key, value);
     }
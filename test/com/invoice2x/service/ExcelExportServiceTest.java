@@ -0,0 +1,64 @@
+package com.invoice2x.service;
+
+import static org.junit.Assert.assertEquals;
+
+import com.invoice2x.model.Invoice;
+import com.invoice2x.model.InvoiceItem;
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+ // Styles are shared per workbook, so their number must not grow with the invoice count
+
+public class ExcelExportServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void styleCountDoesNotGrowWithInvoices() throws Exception {
+        assertEquals(styleCount(2, false), styleCount(200, false));
+    }
+
+    @Test
+    public void styleCountDoesNotGrowWithInvoicesWhenStreaming() throws Exception {
+        assertEquals(styleCount(2, true), styleCount(200, true));
+    }
+
+    private int styleCount(int invoiceCount, boolean streaming) throws Exception {
+        ExportOptions options = new ExportOptions();
+        options.setStreaming(streaming);
+        File file = folder.newFile("export-" + invoiceCount + "-" + streaming + ".xlsx");
+
+        ExcelExportService.getInstance().exportInvoices(invoices(invoiceCount), file.getPath(), options, null);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(file)) {
+            assertEquals(invoiceCount, workbook.getNumberOfSheets());
+            return workbook.getNumCellStyles();
+        }
+    }
+
+    private static List<Invoice> invoices(int count) {
+        List<Invoice> invoices = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Invoice invoice = new Invoice();
+            invoice.setId(i);
+            invoice.setInvoiceNumber(String.format("INV-2024-%04d", i));
+            invoice.setCustomerName("Customer " + i);
+            invoice.setInvoiceDate(LocalDate.of(2024, 1, 1).plusDays(i));
+            invoice.setDueDate(LocalDate.of(2024, 1, 31).plusDays(i));
+            invoice.addItem(new InvoiceItem("Consulting", BigDecimal.valueOf(i), new BigDecimal("12.50")));
+            invoice.addItem(new InvoiceItem("Travel", BigDecimal.ONE, new BigDecimal("40.00")));
+            invoice.calculateTotals(new BigDecimal("10"));
+            invoices.add(invoice);
+        }
+        return invoices;
+    }
+}